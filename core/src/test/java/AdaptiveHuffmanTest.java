@@ -0,0 +1,119 @@
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.fail;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.StringReader;
+import java.io.StringWriter;
+import java.util.Random;
+
+import org.junit.jupiter.api.Test;
+
+/**
+ * Tests of adaptive (FGK) Huffman coding.
+ */
+class AdaptiveHuffmanTest {
+  @Test
+  void firstCharsAreSentRaw() {
+    AdaptiveHuffman coder = new AdaptiveHuffman();
+    BitWriter out = new BitWriter();
+    // The tree starts as the NYT leaf alone, whose code is empty.
+    coder.encode('a', out);
+    assertEquals(AdaptiveHuffman.CHAR_BITS, out.bitLength());
+    // Then 'a' and NYT have a bit each.
+    coder.encode('a', out);
+    assertEquals(AdaptiveHuffman.CHAR_BITS + 1, out.bitLength());
+    coder.encode('b', out);
+    assertEquals(2 * AdaptiveHuffman.CHAR_BITS + 2, out.bitLength());
+  }
+
+  @Test
+  void roundTrip() {
+    roundTrip("");
+    roundTrip("aaaaaaaaaaaaaaaaaaaaaaaa");
+    roundTrip("abracadabra, abracadabra");
+    roundTrip("中文字符中文 mixed with ASCII ￿\u0000");
+    // Skewed counts that shift as the text goes, so nodes swap often.
+    Random random = new Random(1);
+    StringBuilder text = new StringBuilder();
+    for (int i = 0; i < 200000; i++) {
+      int range = i < 100000 ? 5 : 500;
+      text.append((char) ('a' + Math.min(random.nextInt(range), random.nextInt(range))));
+    }
+    roundTrip(text.toString());
+  }
+
+  @Test
+  void noEndFrame() throws IOException {
+    byte[] frames = encode("adaptive");
+    ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+    bytes.write(frames, 0, frames.length - 4);
+    assertMalformed(bytes.toByteArray());
+  }
+
+  @Test
+  void frameEndsInChar() throws IOException {
+    // 8 bits of a 16-bit raw char.
+    ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+    DataOutputStream data = new DataOutputStream(bytes);
+    data.writeInt(8);
+    data.writeByte('a');
+    data.writeInt(0);
+    assertMalformed(bytes.toByteArray());
+  }
+
+  /**
+   * Encodes and decodes a text, as frames and char by char.
+   *
+   * @param text text to encode.
+   */
+  private static void roundTrip(String text) {
+    try {
+      StringWriter out = new StringWriter();
+      long chars = AdaptiveHuffman.decode(new ByteArrayInputStream(encode(text)), out);
+      assertEquals(text.length(), chars);
+      assertEquals(text, out.toString());
+    }
+    catch (IOException ioe) {
+      throw new AssertionError(ioe);
+    }
+
+    AdaptiveHuffman encoder = new AdaptiveHuffman();
+    BitWriter bits = new BitWriter();
+    for (int i = 0; i < text.length(); i++) {
+      encoder.encode(text.charAt(i), bits);
+    }
+    AdaptiveHuffman decoder = new AdaptiveHuffman();
+    BitReader in = new BitReader(bits.toByteArray(), bits.bitLength());
+    StringBuilder decoded = new StringBuilder();
+    while (in.hasNext()) {
+      decoded.append(decoder.decode(in));
+    }
+    assertEquals(text, decoded.toString());
+  }
+
+  /**
+   * @param text text to encode.
+   * @return     its frames.
+   * @throws IOException never
+   */
+  private static byte[] encode(String text) throws IOException {
+    ByteArrayOutputStream frames = new ByteArrayOutputStream();
+    AdaptiveHuffman.encode(new StringReader(text), frames);
+    return frames.toByteArray();
+  }
+
+  /**
+   * @param frames frames that decode() should reject.
+   */
+  private static void assertMalformed(byte[] frames) {
+    try {
+      AdaptiveHuffman.decode(new ByteArrayInputStream(frames), new StringWriter());
+      fail("Decoded malformed frames.");
+    }
+    catch (IOException expected) {
+    }
+  }
+}
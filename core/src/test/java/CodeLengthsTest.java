@@ -0,0 +1,112 @@
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.junit.jupiter.api.Assertions.fail;
+
+import java.util.Arrays;
+import java.util.Random;
+
+import org.junit.jupiter.api.Test;
+
+/**
+ * Tests of code lengths computed straight from frequencies.
+ */
+class CodeLengthsTest {
+  /**
+   * Powers of 2, whose Huffman codes are as long as they can be.
+   */
+  private final static long[] FREQS = {1, 1, 2, 4, 8, 16};
+
+  @Test
+  void packageMergeWithoutLimit() {
+    // A limit the Huffman codes already fit in changes nothing.
+    assertArrayEquals(new byte[] {5, 5, 4, 3, 2, 1}, CodeLengths.packageMerge(FREQS, 5));
+    assertArrayEquals(new byte[] {5, 5, 4, 3, 2, 1}, CodeLengths.packageMerge(FREQS, 32));
+  }
+
+  @Test
+  void packageMergeWithLimit() {
+    // 6 codes of up to 3 bits: 4 of 3 bits and 2 of 2 is the only way.
+    assertArrayEquals(new byte[] {3, 3, 3, 3, 2, 2}, CodeLengths.packageMerge(FREQS, 3));
+    // Cost 64, against 62 without a limit.
+    assertArrayEquals(new byte[] {4, 4, 4, 4, 2, 1}, CodeLengths.packageMerge(FREQS, 4));
+  }
+
+  @Test
+  void packageMergeLimitTooShort() {
+    try {
+      CodeLengths.packageMerge(FREQS, 2);
+      fail("Fit 6 codes in 2 bits.");
+    }
+    catch (IllegalArgumentException expected) {
+    }
+  }
+
+  @Test
+  void packageMergeRandom() {
+    Random random = new Random(1);
+    for (int round = 0; round < 100; round++) {
+      long[] freqs = freqs(random);
+      int limit = CodeLengths.minLimit(freqs.length) + random.nextInt(4);
+      byte[] lengths = CodeLengths.packageMerge(freqs, limit);
+      long kraft = 0;
+      for (byte len : lengths) {
+        assertTrue(len >= 1 && len <= limit);
+        kraft += 1L << (limit - len);
+      }
+      assertEquals(1L << limit, kraft, "Code is not complete.");
+    }
+  }
+
+  @Test
+  void huffman() {
+    long[] a = FREQS.clone();
+    CodeLengths.huffman(a);
+    assertArrayEquals(new long[] {5, 5, 4, 3, 2, 1}, a);
+    a = new long[] {3, 3, 3, 3};
+    CodeLengths.huffman(a);
+    assertArrayEquals(new long[] {2, 2, 2, 2}, a);
+  }
+
+  @Test
+  void huffmanTooFewChars() {
+    try {
+      CodeLengths.huffman(new long[] {1});
+      fail("Gave 1 char a code.");
+    }
+    catch (IllegalArgumentException expected) {
+    }
+  }
+
+  @Test
+  void huffmanCostMatchesPackageMerge() {
+    // No code is longer than n - 1 bits, so that limit changes nothing.
+    Random random = new Random(2);
+    for (int round = 0; round < 100; round++) {
+      long[] freqs = freqs(random);
+      long[] lengths = freqs.clone();
+      CodeLengths.huffman(lengths);
+      byte[] limited = CodeLengths.packageMerge(freqs, freqs.length - 1);
+      long cost = 0;
+      long limitedCost = 0;
+      for (int i = 0; i < freqs.length; i++) {
+        cost += freqs[i] * lengths[i];
+        limitedCost += freqs[i] * limited[i];
+      }
+      assertEquals(limitedCost, cost);
+    }
+  }
+
+  /**
+   * @param random source of the frequencies.
+   * @return       2 to 200 sorted frequencies, some tied.
+   */
+  private static long[] freqs(Random random) {
+    long[] freqs = new long[2 + random.nextInt(199)];
+    for (int i = 0; i < freqs.length; i++) {
+      freqs[i] = 1 + random.nextInt(1000);
+    }
+    Arrays.sort(freqs);
+    return freqs;
+  }
+}
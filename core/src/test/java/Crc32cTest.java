@@ -0,0 +1,58 @@
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Random;
+import java.util.zip.Checksum;
+
+import org.junit.jupiter.api.Test;
+
+/**
+ * Tests of CRC-32C checksums, from the JVM and from the tables.
+ */
+class Crc32cTest {
+  /**
+   * The standard check: the CRC of "123456789".
+   */
+  private final static long CHECK = 0xE3069283L;
+
+  @Test
+  void checkValue() {
+    byte[] digits = "123456789".getBytes(StandardCharsets.US_ASCII);
+    Checksum jvm = Crc32c.create();
+    jvm.update(digits, 0, digits.length);
+    assertEquals(CHECK, jvm.getValue());
+    Checksum tables = new Crc32c();
+    tables.update(digits, 0, digits.length);
+    assertEquals(CHECK, tables.getValue());
+  }
+
+  @Test
+  void byteAtATime() {
+    Checksum crc = new Crc32c();
+    for (byte b : "123456789".getBytes(StandardCharsets.US_ASCII)) {
+      crc.update(b);
+    }
+    assertEquals(CHECK, crc.getValue());
+    crc.reset();
+    assertEquals(0, crc.getValue());
+  }
+
+  @Test
+  void tablesMatchJvm() {
+    // Lengths and offsets on and off 8-byte boundaries, in pieces.
+    Random random = new Random(1);
+    byte[] bytes = new byte[1000];
+    random.nextBytes(bytes);
+    for (int round = 0; round < 200; round++) {
+      int off = random.nextInt(bytes.length);
+      int len = random.nextInt(bytes.length - off + 1);
+      int split = off + random.nextInt(len + 1);
+      Checksum jvm = Crc32c.create();
+      Checksum tables = new Crc32c();
+      jvm.update(bytes, off, len);
+      tables.update(bytes, off, split - off);
+      tables.update(bytes, split, off + len - split);
+      assertEquals(jvm.getValue(), tables.getValue());
+    }
+  }
+}
@@ -0,0 +1,97 @@
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.fail;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+import org.junit.jupiter.api.Test;
+
+/**
+ * Tests of self-contained blocks, coded or stored.
+ */
+class HuffmanBlockTest {
+  private final static char[] CODED =
+      "peter piper picked a peck of pickled peppers; a peck of pickled peppers peter piper picked"
+      .toCharArray();
+
+  @Test
+  void storedWhenTiny() {
+    char[] text = "ab".toCharArray();
+    byte[] block = HuffmanBlock.encode(text, HuffmanConfig.DEFAULT);
+    assertEquals(HuffmanBlock.STORED, block[0]);
+    assertArrayEquals(text, HuffmanBlock.decode(ByteBuffer.wrap(block)));
+  }
+
+  @Test
+  void storedWhenAllDifferent() {
+    char[] text = new char[1000];
+    for (int i = 0; i < text.length; i++) {
+      text[i] = (char) (0x4E00 + i * 7);
+    }
+    byte[] block = HuffmanBlock.encode(text, HuffmanConfig.DEFAULT);
+    assertEquals(HuffmanBlock.STORED, block[0]);
+    assertArrayEquals(text, HuffmanBlock.decode(ByteBuffer.wrap(block)));
+  }
+
+  @Test
+  void coded() {
+    byte[] block = HuffmanBlock.encode(CODED, HuffmanConfig.DEFAULT);
+    assertEquals(HuffmanBlock.CODED, block[0]);
+    assertArrayEquals(CODED, HuffmanBlock.decode(ByteBuffer.wrap(block)));
+  }
+
+  @Test
+  void blocksBackToBack() {
+    byte[] first = HuffmanBlock.encode(CODED, HuffmanConfig.DEFAULT);
+    byte[] second = HuffmanBlock.encode("xy".toCharArray(), HuffmanConfig.DEFAULT);
+    ByteBuffer in = ByteBuffer.allocate(first.length + second.length);
+    in.put(first).put(second).flip();
+    assertArrayEquals(CODED, HuffmanBlock.decode(in));
+    assertArrayEquals("xy".toCharArray(), HuffmanBlock.decode(in));
+    assertFalse(in.hasRemaining());
+  }
+
+  @Test
+  void badType() {
+    byte[] block = HuffmanBlock.encode(CODED, HuffmanConfig.DEFAULT);
+    block[0] = 7;
+    assertMalformed(block);
+  }
+
+  @Test
+  void truncated() {
+    byte[] coded = HuffmanBlock.encode(CODED, HuffmanConfig.DEFAULT);
+    assertMalformed(Arrays.copyOf(coded, coded.length - 1));
+    assertMalformed(Arrays.copyOf(coded, 3));
+    byte[] stored = HuffmanBlock.encode("ab".toCharArray(), HuffmanConfig.DEFAULT);
+    assertMalformed(Arrays.copyOf(stored, stored.length - 1));
+  }
+
+  @Test
+  void lengthPastEnd() {
+    // Huge char counts are rejected before allocating for them.
+    byte[] stored = HuffmanBlock.encode("ab".toCharArray(), HuffmanConfig.DEFAULT);
+    ByteBuffer.wrap(stored).putInt(1, Integer.MAX_VALUE);
+    assertMalformed(stored);
+    byte[] coded = HuffmanBlock.encode(CODED, HuffmanConfig.DEFAULT);
+    ByteBuffer.wrap(coded).putInt(1, Integer.MAX_VALUE);
+    assertMalformed(coded);
+    coded = HuffmanBlock.encode(CODED, HuffmanConfig.DEFAULT);
+    ByteBuffer.wrap(coded).putLong(5, Long.MAX_VALUE);
+    assertMalformed(coded);
+  }
+
+  /**
+   * @param block block that decode() should reject.
+   */
+  private static void assertMalformed(byte[] block) {
+    try {
+      HuffmanBlock.decode(ByteBuffer.wrap(block));
+      fail("Decoded a malformed block.");
+    }
+    catch (IllegalArgumentException expected) {
+    }
+  }
+}
@@ -0,0 +1,92 @@
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.fail;
+
+import java.util.NoSuchElementException;
+
+import org.junit.jupiter.api.Test;
+
+/**
+ * Tests of canonical codes and the code length header.
+ */
+class HuffmanCodebookTest {
+  @Test
+  void canonicalCodes() {
+    // Shorter codes first, then by char.
+    HuffmanCodebook book = HuffmanCodebook.canonical(new byte[] {2, 1, 3, 3});
+    assertEquals(0b0, book.code(1));
+    assertEquals(0b10, book.code(0));
+    assertEquals(0b110, book.code(2));
+    assertEquals(0b111, book.code(3));
+    assertEquals(3, book.length(3));
+  }
+
+  @Test
+  void lengthsRoundTrip() {
+    byte[] lengths = new byte[300];
+    lengths['a'] = 1;
+    lengths['b'] = 2;
+    lengths['c'] = 3;
+    lengths[299] = 3;
+    BitWriter out = new BitWriter();
+    HuffmanCodebook.canonical(lengths).writeLengths(out);
+    BitReader in = new BitReader(out.toByteArray(), out.bitLength());
+    assertArrayEquals(lengths, HuffmanCodebook.readLengths(in));
+    assertEquals(0, in.remaining());
+  }
+
+  @Test
+  void tooWide() {
+    BitWriter out = new BitWriter();
+    out.writeBits(7, 3);
+    out.writeBits(2, 17);
+    assertMalformed(out);
+  }
+
+  @Test
+  void tooManyChars() {
+    BitWriter out = new BitWriter();
+    out.writeBits(0, 3);
+    out.writeBits((1 << 17) - 1, 17);
+    assertMalformed(out);
+  }
+
+  @Test
+  void gapTooLong() {
+    // 10 bytes claiming a char 2^31 past the first.
+    BitWriter out = new BitWriter();
+    out.writeBits(0, 3);
+    out.writeBits(2, 17);
+    out.writeBits(0, 31);
+    out.writeBits(1, 1);
+    out.writeBits(0x7FFFFFFF, 31);
+    out.writeBits(1, 1);
+    assertMalformed(out);
+  }
+
+  @Test
+  void truncated() {
+    BitWriter out = new BitWriter();
+    out.writeBits(0, 3);
+    out.writeBits(5, 17);
+    out.writeBits(1, 1);
+    try {
+      HuffmanCodebook.readLengths(new BitReader(out.toByteArray(), out.bitLength()));
+      fail("Read a header with 4 chars missing.");
+    }
+    catch (NoSuchElementException expected) {
+    }
+  }
+
+  /**
+   * @param out header that readLengths() should reject.
+   */
+  private static void assertMalformed(BitWriter out) {
+    try {
+      HuffmanCodebook.readLengths(new BitReader(out.toByteArray(), out.bitLength()));
+      fail("Read a malformed header.");
+    }
+    catch (IllegalArgumentException expected) {
+    }
+  }
+}
@@ -0,0 +1,205 @@
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.fail;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.concurrent.ForkJoinPool;
+import java.util.zip.Checksum;
+
+import org.junit.jupiter.api.Test;
+
+/**
+ * Tests of the container format: round trips of every tree kind, the
+ * framing, and containers that must be rejected.
+ */
+class HuffmanContainerTest {
+  private final static char[] TEXT =
+      "the quick brown fox jumps over the lazy dog. the lazy dog sleeps on."
+      .toCharArray();
+
+  /**
+   * Few chars per block, so the text takes many blocks, the last short.
+   */
+  private final static int BLOCK_CHARS = 16;
+
+  /**
+   * Bytes of the header before its CRC, for a built-in tree.
+   */
+  private final static int HEADER_BYTES = 4 + 1 + 1 + 4 + 8;
+
+  @Test
+  void roundTripEveryKind() {
+    HuffmanTree std = HuffmanTree.builtInTree(true);
+    HuffmanTree canonical = new HuffmanTree(TEXT, HuffmanConfig.DEFAULT);
+    HuffmanTree nodes = new HuffmanTree(TEXT, new HuffmanConfig(false, false, 0));
+    ForkJoinPool pool = new ForkJoinPool(2);
+    try {
+      for (ForkJoinPool threads : new ForkJoinPool[] {null, pool}) {
+        assertRoundTrip(HuffmanContainer.STD_TREE,
+            HuffmanContainer.encode(TEXT, std, HuffmanContainer.STD_TREE, BLOCK_CHARS, threads));
+        assertRoundTrip(HuffmanContainer.CODE_LENGTHS,
+            HuffmanContainer.encode(TEXT, canonical, 0, BLOCK_CHARS, threads));
+        assertRoundTrip(HuffmanContainer.NODES,
+            HuffmanContainer.encode(TEXT, nodes, 0, BLOCK_CHARS, threads));
+        assertRoundTrip(HuffmanContainer.BLOCK_TREES,
+            HuffmanContainer.encodeBlockTrees(TEXT, HuffmanConfig.DEFAULT, BLOCK_CHARS, threads));
+      }
+    }
+    finally {
+      pool.shutdown();
+    }
+  }
+
+  @Test
+  void sameBytesOnAnyThreads() {
+    HuffmanTree tree = new HuffmanTree(TEXT, HuffmanConfig.DEFAULT);
+    ForkJoinPool pool = new ForkJoinPool(3);
+    try {
+      assertArrayEquals(HuffmanContainer.encode(TEXT, tree, 0, BLOCK_CHARS, null),
+                        HuffmanContainer.encode(TEXT, tree, 0, BLOCK_CHARS, pool));
+    }
+    finally {
+      pool.shutdown();
+    }
+  }
+
+  @Test
+  void framing() {
+    byte[] container = stdContainer();
+    ByteBuffer in = ByteBuffer.wrap(container);
+    assertEquals(HuffmanContainer.MAGIC, in.getInt());
+    assertEquals(HuffmanContainer.VERSION, in.get());
+    assertEquals(HuffmanContainer.STD_TREE, in.get());
+    assertEquals(BLOCK_CHARS, in.getInt());
+    assertEquals(TEXT.length, in.getLong());
+    assertEquals((int) crc(container, 0, HEADER_BYTES), in.getInt());
+    // Then each block's chars, bytes and CRC.
+    long blocks = 0;
+    while (in.hasRemaining()) {
+      int chars = in.getInt();
+      int bytes = in.getInt();
+      assertEquals(Math.min(BLOCK_CHARS, TEXT.length - blocks * BLOCK_CHARS), chars);
+      int start = in.position() - 8;
+      Checksum crc = Crc32c.create();
+      crc.update(container, start, 8);
+      crc.update(container, start + 12, bytes);
+      assertEquals((int) crc.getValue(), in.getInt());
+      in.position(in.position() + bytes);
+      blocks++;
+    }
+    assertEquals(blocks, HuffmanContainer.verify(ByteBuffer.wrap(container)));
+  }
+
+  @Test
+  void emptyText() {
+    byte[] container = HuffmanContainer.encode(new char[0], HuffmanTree.builtInTree(true),
+                                               HuffmanContainer.STD_TREE, BLOCK_CHARS, null);
+    assertEquals(0, HuffmanContainer.decode(ByteBuffer.wrap(container)).length);
+  }
+
+  @Test
+  void badMagic() {
+    byte[] container = stdContainer();
+    container[0] ^= 1;
+    assertMalformed(container);
+  }
+
+  @Test
+  void badCrc() {
+    byte[] container = stdContainer();
+    container[container.length - 1] ^= 1;
+    assertMalformed(container);
+    container = stdContainer();
+    container[HEADER_BYTES - 1] ^= 1;
+    assertMalformed(container);
+  }
+
+  @Test
+  void truncated() {
+    byte[] container = stdContainer();
+    assertMalformed(Arrays.copyOf(container, container.length - 1));
+    assertMalformed(Arrays.copyOf(container, HEADER_BYTES));
+  }
+
+  @Test
+  void lengthPastEnd() {
+    // A huge length, with a CRC to match: rejected before allocating.
+    byte[] container = stdContainer();
+    ByteBuffer.wrap(container).putLong(10, Integer.MAX_VALUE - 16);
+    ByteBuffer.wrap(container).putInt(HEADER_BYTES, (int) crc(container, 0, HEADER_BYTES));
+    assertMalformed(container);
+  }
+
+  @Test
+  void badStoredTree() {
+    HuffmanTree tree = new HuffmanTree(TEXT, HuffmanConfig.DEFAULT);
+    byte[] container = HuffmanContainer.encode(TEXT, tree, 0, BLOCK_CHARS, null);
+    ByteBuffer in = ByteBuffer.wrap(container);
+    int treeBytes = (in.getInt(HEADER_BYTES) + 7) >>> 3;
+    int crcAt = HEADER_BYTES + 4 + treeBytes;
+    // Code lengths 8 bits wide, with a CRC to match.
+    container[HEADER_BYTES + 4] |= (byte) 0xE0;
+    in.putInt(crcAt, (int) crc(container, 0, crcAt));
+    // verify() does not load the tree, so only decode() can tell.
+    HuffmanContainer.verify(ByteBuffer.wrap(container));
+    try {
+      HuffmanContainer.decode(ByteBuffer.wrap(container));
+      fail("Decoded a container with a malformed tree.");
+    }
+    catch (IllegalArgumentException expected) {
+    }
+  }
+
+  /**
+   * Decodes a container and checks it against TEXT.
+   *
+   * @param kind      tree kind it should have.
+   * @param container the container.
+   */
+  private static void assertRoundTrip(int kind, byte[] container) {
+    assertEquals(kind, container[5]);
+    ByteBuffer in = ByteBuffer.wrap(container);
+    assertArrayEquals(TEXT, HuffmanContainer.decode(in));
+    assertFalse(in.hasRemaining());
+  }
+
+  /**
+   * @return TEXT in a container with the standard tree
+   */
+  private static byte[] stdContainer() {
+    return HuffmanContainer.encode(TEXT, HuffmanTree.builtInTree(true),
+                                   HuffmanContainer.STD_TREE, BLOCK_CHARS, null);
+  }
+
+  /**
+   * @param bytes bytes to check.
+   * @param from  index of the first byte.
+   * @param to    index after the last byte.
+   * @return      CRC-32C of the bytes.
+   */
+  private static long crc(byte[] bytes, int from, int to) {
+    Checksum crc = Crc32c.create();
+    crc.update(bytes, from, to - from);
+    return crc.getValue();
+  }
+
+  /**
+   * @param container container that decode() and verify() should reject.
+   */
+  private static void assertMalformed(byte[] container) {
+    try {
+      HuffmanContainer.decode(ByteBuffer.wrap(container));
+      fail("Decoded a malformed container.");
+    }
+    catch (IllegalArgumentException expected) {
+    }
+    try {
+      HuffmanContainer.verify(ByteBuffer.wrap(container));
+      fail("Verified a malformed container.");
+    }
+    catch (IllegalArgumentException expected) {
+    }
+  }
+}
@@ -0,0 +1,88 @@
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.fail;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.StringReader;
+import java.io.StringWriter;
+import java.util.Arrays;
+import java.util.Random;
+
+import org.junit.jupiter.api.Test;
+
+/**
+ * Tests of streaming encode and decode, in frames.
+ */
+class HuffmanStreamsTest {
+  /**
+   * More than one buffer of text, so it takes several frames.
+   */
+  private final static String TEXT = text(HuffmanStreams.BUFFER_CHARS * 5 / 2);
+
+  @Test
+  void roundTrip() throws IOException {
+    HuffmanTree tree = new HuffmanTree(TEXT.toCharArray());
+    byte[] frames = encode(tree, TEXT);
+    StringWriter out = new StringWriter();
+    long chars = HuffmanStreams.decode(tree, new ByteArrayInputStream(frames), out);
+    assertEquals(TEXT.length(), chars);
+    assertEquals(TEXT, out.toString());
+  }
+
+  @Test
+  void noEndFrame() throws IOException {
+    HuffmanTree tree = new HuffmanTree(TEXT.toCharArray());
+    byte[] frames = encode(tree, TEXT);
+    assertMalformed(tree, Arrays.copyOf(frames, frames.length - 4));
+  }
+
+  @Test
+  void badFrameSize() throws IOException {
+    HuffmanTree tree = new HuffmanTree(TEXT.toCharArray());
+    ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+    DataOutputStream data = new DataOutputStream(bytes);
+    data.writeInt(HuffmanStreams.MAX_FRAME_BITS + 1);
+    data.writeInt(0);
+    assertMalformed(tree, bytes.toByteArray());
+  }
+
+  /**
+   * @param tree tree to encode with.
+   * @param text text to encode.
+   * @return     the frames.
+   * @throws IOException never
+   */
+  private static byte[] encode(HuffmanTree tree, String text) throws IOException {
+    ByteArrayOutputStream frames = new ByteArrayOutputStream();
+    HuffmanStreams.encode(tree.codebook(), new StringReader(text), frames);
+    return frames.toByteArray();
+  }
+
+  /**
+   * @param tree   tree to decode with.
+   * @param frames frames that decode() should reject.
+   */
+  private static void assertMalformed(HuffmanTree tree, byte[] frames) {
+    try {
+      HuffmanStreams.decode(tree, new ByteArrayInputStream(frames), new StringWriter());
+      fail("Decoded malformed frames.");
+    }
+    catch (IOException expected) {
+    }
+  }
+
+  /**
+   * @param length chars to make.
+   * @return       text of skewed frequencies, the same every run.
+   */
+  private static String text(int length) {
+    Random random = new Random(1);
+    StringBuilder text = new StringBuilder(length);
+    for (int i = 0; i < length; i++) {
+      text.append((char) ('a' + Math.min(random.nextInt(26), random.nextInt(26))));
+    }
+    return text.toString();
+  }
+}
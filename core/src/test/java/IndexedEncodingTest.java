@@ -0,0 +1,96 @@
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.fail;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.concurrent.ForkJoinPool;
+
+import org.junit.jupiter.api.Test;
+
+/**
+ * Tests of the block index, and of reading it back.
+ */
+class IndexedEncodingTest {
+  private final static char[] TEXT =
+      "she sells sea shells by the sea shore, the shells she sells are sea shells"
+      .toCharArray();
+
+  /**
+   * Few chars per block, so the text takes many blocks.
+   */
+  private final static int BLOCK_CHARS = 7;
+
+  @Test
+  void roundTrip() throws IOException {
+    HuffmanTree tree = new HuffmanTree(TEXT);
+    IndexedEncoding read = IndexedEncoding.readFrom(ByteBuffer.wrap(write(tree)));
+    assertEquals(TEXT.length, read.length());
+    assertEquals((TEXT.length + BLOCK_CHARS - 1) / BLOCK_CHARS, read.blocks());
+    ForkJoinPool pool = new ForkJoinPool(2);
+    try {
+      assertArrayEquals(TEXT, read.decodeAll(tree.decoder(), pool));
+    }
+    finally {
+      pool.shutdown();
+    }
+    assertEquals(new String(TEXT, 10, 30), read.decodeRange(tree.decoder(), 10, 30));
+  }
+
+  @Test
+  void truncated() throws IOException {
+    byte[] bytes = write(new HuffmanTree(TEXT));
+    assertMalformed(Arrays.copyOf(bytes, bytes.length - 1));
+    assertMalformed(Arrays.copyOf(bytes, 10));
+  }
+
+  @Test
+  void indexLargerThanInput() throws IOException {
+    byte[] bytes = write(new HuffmanTree(TEXT));
+    // A char count of 2^62 needs an index of 2^62 / 7 offsets.
+    ByteBuffer.wrap(bytes).putLong(0, 1L << 62);
+    assertMalformed(bytes);
+    ByteBuffer.wrap(bytes).putLong(0, Long.MAX_VALUE).putInt(8, 1);
+    assertMalformed(bytes);
+  }
+
+  @Test
+  void bitLengthPastEnd() throws IOException {
+    byte[] bytes = write(new HuffmanTree(TEXT));
+    ByteBuffer.wrap(bytes).putLong(8 + 4, Long.MAX_VALUE);
+    assertMalformed(bytes);
+  }
+
+  @Test
+  void badOffset() throws IOException {
+    byte[] bytes = write(new HuffmanTree(TEXT));
+    // The second block's offset, past the end of the bits.
+    ByteBuffer.wrap(bytes).putLong(8 + 4 + 8 + 8, Long.MAX_VALUE);
+    assertMalformed(bytes);
+  }
+
+  /**
+   * @param tree tree to encode TEXT with.
+   * @return     the written encoding.
+   * @throws IOException never
+   */
+  private static byte[] write(HuffmanTree tree) throws IOException {
+    ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+    IndexedEncoding.encode(tree.codebook(), TEXT, BLOCK_CHARS).writeTo(bytes);
+    return bytes.toByteArray();
+  }
+
+  /**
+   * @param bytes encoding that readFrom() should reject.
+   */
+  private static void assertMalformed(byte[] bytes) {
+    try {
+      IndexedEncoding.readFrom(ByteBuffer.wrap(bytes));
+      fail("Read a malformed indexed encoding.");
+    }
+    catch (IllegalArgumentException expected) {
+    }
+  }
+}
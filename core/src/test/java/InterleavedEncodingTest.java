@@ -0,0 +1,78 @@
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.fail;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+import org.junit.jupiter.api.Test;
+
+/**
+ * Tests of interleaved streams, and of reading them back.
+ */
+class InterleavedEncodingTest {
+  private final static char[] TEXT =
+      "how much wood would a woodchuck chuck if a woodchuck could chuck wood"
+      .toCharArray();
+
+  @Test
+  void roundTrip() throws IOException {
+    HuffmanTree tree = new HuffmanTree(TEXT);
+    // Down to streams with no chars at all.
+    for (int streams : new int[] {1, 2, 4, 7, TEXT.length + 3}) {
+      InterleavedEncoding read = InterleavedEncoding.readFrom(ByteBuffer.wrap(write(tree, streams)));
+      assertEquals(TEXT.length, read.length());
+      assertEquals(streams, read.streams());
+      assertArrayEquals(TEXT, read.decode(tree.decoder()));
+    }
+  }
+
+  @Test
+  void truncated() throws IOException {
+    byte[] bytes = write(new HuffmanTree(TEXT), InterleavedEncoding.STREAMS);
+    assertMalformed(Arrays.copyOf(bytes, bytes.length - 1));
+    assertMalformed(Arrays.copyOf(bytes, 10));
+  }
+
+  @Test
+  void badStreamCount() throws IOException {
+    byte[] bytes = write(new HuffmanTree(TEXT), InterleavedEncoding.STREAMS);
+    ByteBuffer.wrap(bytes).putInt(8, -1);
+    assertMalformed(bytes);
+    ByteBuffer.wrap(bytes).putInt(8, Integer.MAX_VALUE);
+    assertMalformed(bytes);
+  }
+
+  @Test
+  void badStreamLength() throws IOException {
+    byte[] bytes = write(new HuffmanTree(TEXT), InterleavedEncoding.STREAMS);
+    ByteBuffer.wrap(bytes).putLong(8 + 4, Long.MAX_VALUE);
+    assertMalformed(bytes);
+  }
+
+  /**
+   * @param tree    tree to encode TEXT with.
+   * @param streams number of streams.
+   * @return        the written encoding.
+   * @throws IOException never
+   */
+  private static byte[] write(HuffmanTree tree, int streams) throws IOException {
+    ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+    InterleavedEncoding.encode(tree.codebook(), TEXT, streams).writeTo(bytes);
+    return bytes.toByteArray();
+  }
+
+  /**
+   * @param bytes encoding that readFrom() should reject.
+   */
+  private static void assertMalformed(byte[] bytes) {
+    try {
+      InterleavedEncoding.readFrom(ByteBuffer.wrap(bytes));
+      fail("Read a malformed interleaved encoding.");
+    }
+    catch (IllegalArgumentException expected) {
+    }
+  }
+}
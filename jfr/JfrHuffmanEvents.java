@@ -0,0 +1,83 @@
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.EventType;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+/**
+ * HuffmanEvents as JDK Flight Recorder events, so tree builds, encodes
+ * and decodes show up in a recording with their durations, chars and
+ * bits. Enable them with the usual JFR settings, for instance
+ *   java -XX:StartFlightRecording:filename=huffman.jfr Driver
+ * records them at their defaults (enabled, no threshold).
+ *
+ * Nothing is allocated for an event unless its type is enabled in some
+ * recording, so with JFR off begin() costs one check.
+ *
+ * Java 11 or later; loaded by HuffmanEvents when available.
+ */
+class JfrHuffmanEvents extends HuffmanEvents {
+  /**
+   * Fields common to all the events.
+   */
+  @Category("Huffman")
+  abstract static class HuffmanEvent extends Event {
+    @Label("Chars")
+    long chars;
+
+    @Label("Encoded Size")
+    @DataAmount(DataAmount.BITS)
+    long bits;
+  }
+
+  @Name("huffman.TreeBuild")
+  @Label("Huffman Tree Build")
+  @Description("Counting chars and building a tree and its codes")
+  static class BuildEvent extends HuffmanEvent {
+  }
+
+  @Name("huffman.Encode")
+  @Label("Huffman Encode")
+  @Description("Encoding chars with a codec")
+  static class EncodeEvent extends HuffmanEvent {
+  }
+
+  @Name("huffman.Decode")
+  @Label("Huffman Decode")
+  @Description("Decoding chars with a codec")
+  static class DecodeEvent extends HuffmanEvent {
+  }
+
+  /**
+   * Type of each kind of event, indexed by BUILD, ENCODE and DECODE.
+   */
+  private final EventType[] types = {
+    EventType.getEventType(BuildEvent.class),
+    EventType.getEventType(EncodeEvent.class),
+    EventType.getEventType(DecodeEvent.class)
+  };
+
+  @Override
+  Object begin(int kind) {
+    if (!types[kind].isEnabled()) return null;
+    HuffmanEvent event = kind == BUILD ? new BuildEvent()
+                       : kind == ENCODE ? new EncodeEvent()
+                       : new DecodeEvent();
+    event.begin();
+    return event;
+  }
+
+  @Override
+  void commit(Object event, long chars, long bits) {
+    if (event == null) return;
+    HuffmanEvent e = (HuffmanEvent) event;
+    e.end();
+    if (e.shouldCommit()) {
+      e.chars = chars;
+      e.bits = bits;
+      e.commit();
+    }
+  }
+}
@@ -0,0 +1,103 @@
+import java.nio.ByteBuffer;
+import java.util.Map;
+
+/**
+ * Bridges JMH benchmarks (which must be in a named package) to the
+ * Huffman classes in the unnamed package. See huffman.bench.HuffmanOps.
+ */
+public class BenchTargets implements huffman.bench.HuffmanOps {
+  /**
+   * Encoded bits, packed, ready for a BitReader.
+   */
+  private static class Packed {
+    final byte[] bytes;
+    final long bitLength;
+
+    Packed(BitWriter bits) {
+      bytes = bits.toByteArray();
+      bitLength = bits.bitLength();
+    }
+  }
+
+  @Override
+  public Object buildTree(char[] text) {
+    return new HuffmanTree(text, Driver.CONFIG);
+  }
+
+  @Override
+  public long[] countChars(char[] text) {
+    long[] counts = new long[HuffmanTree.ALPHABET_SIZE];
+    HuffmanTree.countChars(text, 0, text.length, counts);
+    return counts;
+  }
+
+  @Override
+  public Object bitStrings(Object tree) {
+    return ((HuffmanTree) tree).bitStrings();
+  }
+
+  @Override
+  public Object codebook(Object tree) {
+    // Codebooks are cached by the tree, so build one the way it does.
+    HuffmanCodebook book = ((HuffmanTree) tree).codebook();
+    return HuffmanCodebook.canonical(book.lengths.clone());
+  }
+
+  @Override
+  @SuppressWarnings("unchecked")
+  public Object encodeStrings(Object bitStrings, char[] text) {
+    return Driver.encode((Map<Character, String>) bitStrings, text);
+  }
+
+  @Override
+  public Object encodeCodebook(Object codebook, char[] text) {
+    return Driver.encode((HuffmanCodebook) codebook, text);
+  }
+
+  @Override
+  public Object encoder(Object codebook) {
+    return new HuffmanEncoder((HuffmanCodebook) codebook);
+  }
+
+  @Override
+  public long encodeInto(Object encoder, char[] text, ByteBuffer dst) {
+    HuffmanEncoder e = (HuffmanEncoder) encoder;
+    e.reset();
+    dst.clear();
+    long bits = e.encode(text, 0, text.length, dst);
+    e.finish(dst);
+    return bits;
+  }
+
+  @Override
+  public Object packed(Object encoded) {
+    return new Packed((BitWriter) encoded);
+  }
+
+  @Override
+  public String decode(Object tree, Object packed) {
+    Packed p = (Packed) packed;
+    return ((HuffmanTree) tree).decode(new BitReader(p.bytes, p.bitLength));
+  }
+
+  @Override
+  public Object interleaved(Object codebook, char[] text) {
+    return InterleavedEncoding.encode((HuffmanCodebook) codebook, text,
+                                      InterleavedEncoding.STREAMS);
+  }
+
+  @Override
+  public char[] decodeInterleaved(Object tree, Object interleaved) {
+    return ((InterleavedEncoding) interleaved).decode(((HuffmanTree) tree).decoder());
+  }
+
+  @Override
+  public String bitRep(Object tree) {
+    return ((HuffmanTree) tree).bitRep();
+  }
+
+  @Override
+  public Object loadNode(char[] bitRep) {
+    return FlatTree.readBitRep(BitReader.fromBitChars(bitRep));
+  }
+}
@@ -0,0 +1,92 @@
+package huffman.bench;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Encode and decode throughput. Scores are per call; divide size by the
+ * score for chars per second.
+ *
+ * Run with allocation numbers:
+ *   java -jar jmh/target/benchmarks.jar CodecBenchmark -prof gc
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(2)
+@State(Scope.Benchmark)
+public class CodecBenchmark {
+  @Param({"passages", "uniform", "zipf", "skewed"})
+  public String distribution;
+
+  @Param({"1024", "65536", "1048576"})
+  public int size;
+
+  private HuffmanOps ops;
+  private char[] text;
+  private Object tree;
+  private Object bitStrings;
+  private Object codebook;
+  private Object encoder;
+  private ByteBuffer encodeBuffer;
+  private Object packed;
+  private Object interleaved;
+
+  @Setup(Level.Trial)
+  public void setUp() throws IOException {
+    ops = Ops.load();
+    text = Corpus.generate(distribution, size);
+    tree = ops.buildTree(text);
+    bitStrings = ops.bitStrings(tree);
+    codebook = ops.codebook(tree);
+    encoder = ops.encoder(codebook);
+    // Room for the longest codes, so one call encodes everything.
+    encodeBuffer = ByteBuffer.allocate(4 * size + 8);
+    packed = ops.packed(ops.encodeCodebook(codebook, text));
+    interleaved = ops.interleaved(codebook, text);
+  }
+
+  /** Driver.encode with the bitStrings() map. */
+  @Benchmark
+  public Object encodeBitStrings() {
+    return ops.encodeStrings(bitStrings, text);
+  }
+
+  /** Driver.encode with the int codebook. */
+  @Benchmark
+  public Object encodeCodebook() {
+    return ops.encodeCodebook(codebook, text);
+  }
+
+  /** HuffmanEncoder into a reused buffer: no allocation per call. */
+  @Benchmark
+  public long encodeBuffer() {
+    return ops.encodeInto(encoder, text, encodeBuffer);
+  }
+
+  @Benchmark
+  public String decode() {
+    return ops.decode(tree, packed);
+  }
+
+  /** The same text as decode(), split into interleaved streams. */
+  @Benchmark
+  public char[] decodeInterleaved() {
+    return ops.decodeInterleaved(tree, interleaved);
+  }
+}
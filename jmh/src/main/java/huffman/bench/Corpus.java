@@ -0,0 +1,135 @@
+package huffman.bench;
+
+import java.io.IOException;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Random;
+
+/**
+ * Benchmark inputs: the bundled passages, or synthetic text with a
+ * chosen char distribution, repeated or cut to an exact size. Synthetic
+ * text uses fixed seeds, so every run sees the same chars.
+ */
+final class Corpus {
+  /** Printable ASCII plus newline: the alphabet of synthetic corpora. */
+  private static final char[] ALPHABET;
+  static {
+    ALPHABET = new char[96];
+    for (int i = 0; i < 95; i++) {
+      ALPHABET[i] = (char) (' ' + i);
+    }
+    ALPHABET[95] = '\n';
+  }
+
+  /** Passages bundled in the project base directory. */
+  private static final String[] PASSAGES = {
+    "cagedBirdPassage.txt", "theHobbitPassage.txt", "panama.txt"
+  };
+
+  private Corpus() {
+  }
+
+  /**
+   * Generates a corpus.
+   *
+   * @param distribution "passages": the bundled passages, one after another;
+   *                     "uniform": every char equally likely;
+   *                     "zipf": char i has weight 1 / (i + 1), like words
+   *                     in natural text;
+   *                     "skewed": one char is 90% of the text.
+   * @param size         number of chars.
+   * @return             the corpus.
+   */
+  static char[] generate(String distribution, int size) throws IOException {
+    switch (distribution) {
+      case "passages":
+        return repeat(passages(), size);
+      case "uniform":
+        return sample(weights(1.0, 0.0), size);
+      case "zipf":
+        return sample(weights(0.0, 1.0), size);
+      case "skewed":
+        double[] w = weights(1.0, 0.0);
+        w[0] = 9.0 * (w.length - 1); // 90% one char.
+        return sample(w, size);
+      default:
+        throw new IllegalArgumentException("Unknown distribution: " + distribution);
+    }
+  }
+
+  /**
+   * @param flat  weight every char gets.
+   * @param zipf  scale of the extra 1 / (i + 1) weight.
+   * @return      weight of each char of ALPHABET.
+   */
+  private static double[] weights(double flat, double zipf) {
+    double[] w = new double[ALPHABET.length];
+    for (int i = 0; i < w.length; i++) {
+      w[i] = flat + zipf / (i + 1);
+    }
+    return w;
+  }
+
+  /**
+   * Draws chars from ALPHABET at random with the given weights.
+   */
+  private static char[] sample(double[] weights, int size) {
+    double[] cumulative = new double[weights.length];
+    double sum = 0;
+    for (int i = 0; i < weights.length; i++) {
+      sum += weights[i];
+      cumulative[i] = sum;
+    }
+    Random random = new Random(42);
+    char[] out = new char[size];
+    for (int i = 0; i < size; i++) {
+      double r = random.nextDouble() * sum;
+      int j = 0;
+      while (cumulative[j] < r) j++;
+      out[i] = ALPHABET[j];
+    }
+    return out;
+  }
+
+  /**
+   * Repeats text, or cuts it short, to exactly size chars.
+   */
+  private static char[] repeat(char[] text, int size) {
+    char[] out = new char[size];
+    for (int i = 0; i < size; i += text.length) {
+      System.arraycopy(text, 0, out, i, Math.min(text.length, size - i));
+    }
+    return out;
+  }
+
+  /**
+   * Reads the bundled passages, looking in the directory given by the
+   * huffman.data system property, then in the working directory and its
+   * parent (for runs from the jmh directory).
+   */
+  private static char[] passages() throws IOException {
+    StringBuilder sb = new StringBuilder();
+    Path dir = dataDir();
+    for (String name : PASSAGES) {
+      byte[] bytes = Files.readAllBytes(dir.resolve(name));
+      sb.append(new String(bytes, Charset.defaultCharset()));
+    }
+    return sb.toString().toCharArray();
+  }
+
+  private static Path dataDir() throws IOException {
+    String property = System.getProperty("huffman.data");
+    String[] candidates = property != null
+        ? new String[] {property} : new String[] {".", ".."};
+    for (String candidate : candidates) {
+      Path dir = Paths.get(candidate);
+      if (Files.exists(dir.resolve(PASSAGES[0]))) {
+        return dir;
+      }
+    }
+    throw new IOException("Bundled passages not found; run from the project "
+        + "directory or set -Dhuffman.data=<dir>.");
+  }
+}
@@ -0,0 +1,60 @@
+package huffman.bench;
+
+import java.nio.ByteBuffer;
+
+/**
+ * The operations being benchmarked. The Huffman classes live in the
+ * unnamed package, which named packages (and so JMH benchmarks) cannot
+ * import, so the unnamed-package class BenchTargets implements this
+ * interface and the benchmarks load it by name. The one implementation
+ * makes every call monomorphic, so the JIT inlines it away.
+ *
+ * Values are passed as Object: trees, codebooks and encoded bits are
+ * only ever handed back to other methods of this interface.
+ */
+public interface HuffmanOps {
+  /** new HuffmanTree(text): genFrequencyMap + mapToTree. */
+  Object buildTree(char[] text);
+
+  /** HuffmanTree.countChars() over the whole text: genFrequencyMap's loop. */
+  long[] countChars(char[] text);
+
+  /** HuffmanTree.bitStrings(). */
+  Object bitStrings(Object tree);
+
+  /** HuffmanTree.codebook(), a fresh copy each call. */
+  Object codebook(Object tree);
+
+  /** Driver.encode(Map, char[]): bit String codes. */
+  Object encodeStrings(Object bitStrings, char[] text);
+
+  /** Driver.encode(HuffmanCodebook, char[]): int codes. */
+  Object encodeCodebook(Object codebook, char[] text);
+
+  /** new HuffmanEncoder(codebook). */
+  Object encoder(Object codebook);
+
+  /**
+   * HuffmanEncoder.encode() of all of text into dst, then finish(): the
+   * encoder and dst are reused, so nothing is allocated. Returns bits.
+   */
+  long encodeInto(Object encoder, char[] text, ByteBuffer dst);
+
+  /** Packs encoded bits into what decode() takes. */
+  Object packed(Object encoded);
+
+  /** HuffmanTree.decode(BitReader) over packed bits. */
+  String decode(Object tree, Object packed);
+
+  /** InterleavedEncoding.encode() with the default stream count. */
+  Object interleaved(Object codebook, char[] text);
+
+  /** InterleavedEncoding.decode() with the tree's decoder. */
+  char[] decodeInterleaved(Object tree, Object interleaved);
+
+  /** HuffmanTree.bitRep(). */
+  String bitRep(Object tree);
+
+  /** FlatTree.readBitRep() from a bitRep() String. */
+  Object loadNode(char[] bitRep);
+}
@@ -0,0 +1,18 @@
+package huffman.bench;
+
+/**
+ * Loads the one HuffmanOps implementation.
+ */
+final class Ops {
+  private Ops() {
+  }
+
+  static HuffmanOps load() {
+    try {
+      return (HuffmanOps) Class.forName("BenchTargets").getDeclaredConstructor().newInstance();
+    }
+    catch (ReflectiveOperationException e) {
+      throw new IllegalStateException("BenchTargets not on the classpath.", e);
+    }
+  }
+}
@@ -0,0 +1,85 @@
+package huffman.bench;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Tree construction, codebook setup and tree (de)serialization.
+ *
+ * Run with allocation numbers:
+ *   java -jar jmh/target/benchmarks.jar TreeBenchmark -prof gc
+ *
+ * and with the Vector API histogram (see HuffmanKernels):
+ *   java -jar jmh/target/benchmarks.jar TreeBenchmark.countChars \
+ *       -jvmArgsAppend --add-modules=jdk.incubator.vector
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(2)
+@State(Scope.Benchmark)
+public class TreeBenchmark {
+  @Param({"passages", "uniform", "zipf", "skewed"})
+  public String distribution;
+
+  @Param({"1024", "65536", "1048576"})
+  public int size;
+
+  private HuffmanOps ops;
+  private char[] text;
+  private Object tree;
+  private char[] bitRep;
+
+  @Setup(Level.Trial)
+  public void setUp() throws IOException {
+    ops = Ops.load();
+    text = Corpus.generate(distribution, size);
+    tree = ops.buildTree(text);
+    bitRep = ops.bitRep(tree).toCharArray();
+  }
+
+  /** genFrequencyMap + mapToTree. */
+  @Benchmark
+  public Object buildTree() {
+    return ops.buildTree(text);
+  }
+
+  @Benchmark
+  public long[] countChars() {
+    return ops.countChars(text);
+  }
+
+  @Benchmark
+  public Object bitStrings() {
+    return ops.bitStrings(tree);
+  }
+
+  @Benchmark
+  public Object codebook() {
+    return ops.codebook(tree);
+  }
+
+  @Benchmark
+  public String bitRep() {
+    return ops.bitRep(tree);
+  }
+
+  @Benchmark
+  public Object loadNode() {
+    return ops.loadNode(bitRep);
+  }
+}
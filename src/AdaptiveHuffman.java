@@ -0,0 +1,430 @@
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.Reader;
+import java.io.Writer;
+import java.util.Arrays;
+import java.util.NoSuchElementException;
+
+/**
+ * Adaptive (FGK) Huffman coding: encoder and decoder each start from the
+ * same empty tree and update it after every char, so the codes follow
+ * the text as it goes. Nothing needs to be counted ahead of time and no
+ * tree is stored, so text can be encoded in one pass as it arrives.
+ *
+ * The tree starts as a lone "not yet transmitted" (NYT) leaf. A char
+ * seen for the first time is sent as the NYT code followed by the raw
+ * 16-bit char, and the NYT leaf splits into a new NYT leaf and a leaf for
+ * the char. Each char's code is found by walking up the parent pointers
+ * from its leaf.
+ *
+ * After each char, the counts on the path from its leaf to the root go
+ * up by one. Before each increment the node swaps places with the first
+ * node of equal weight in sibling order (see HuffmanNode.number), which
+ * keeps the tree a Huffman Tree for the counts so far. Nodes of equal
+ * weight are always next to each other in that order, so each run of
+ * them is kept as a Block that knows its first node: finding it takes
+ * one lookup however many nodes share the weight, and an update costs
+ * only the depth of the char's leaf.
+ */
+class AdaptiveHuffman {
+  /**
+   * Bits of a char sent after the NYT code.
+   */
+  final static int CHAR_BITS = 16;
+
+  /**
+   * A frame is ended once it has this many bits, so frames stay within
+   * the size stream decoders accept whatever the code lengths.
+   */
+  final static int FRAME_BITS = HuffmanStreams.MAX_FRAME_BITS / 2;
+
+  private HuffmanNode root;
+  /**
+   * Leaf for chars not seen yet. Has a null char and weight 0.
+   */
+  private HuffmanLeaf nyt;
+  /**
+   * Leaf of each char seen so far, indexed by char.
+   */
+  private final HuffmanLeaf[] leaves = new HuffmanLeaf[HuffmanTree.ALPHABET_SIZE];
+  /**
+   * All nodes in sibling order: weights never increase along the list,
+   * and the two children of a parent are always next to each other.
+   */
+  private HuffmanNode[] order = new HuffmanNode[64];
+  /**
+   * Block of the node at each place in sibling order.
+   */
+  private Block[] blocks = new Block[64];
+  /**
+   * Number of nodes in the tree, and so in order and blocks.
+   */
+  private int size = 0;
+  /**
+   * Scratch space for the bits of one code, leaf to root.
+   */
+  private int[] path = new int[64];
+
+  /**
+   * Constructs the starting tree shared by encoder and decoder.
+   */
+  AdaptiveHuffman() {
+    nyt = new HuffmanLeaf(null, 0);
+    root = nyt;
+    order[size] = nyt;
+    blocks[size++] = new Block(0, 0);
+  }
+
+  /**
+   * Run of nodes of the same weight, next to each other in sibling order.
+   * Nodes only ever leave a run from its front, as they go up in weight,
+   * and join the run before from its back.
+   */
+  private final static class Block {
+    /**
+     * Weight of every node in the run.
+     */
+    long weight;
+    /**
+     * Place in sibling order of the first node of the run.
+     */
+    int leader;
+
+    Block(long weight, int leader) {
+      this.weight = weight;
+      this.leader = leader;
+    }
+  }
+
+  //=================\\
+  // ENCODE / DECODE \\
+  //=================\\
+
+  /**
+   * Encodes one char, then updates the tree for it.
+   *
+   * @param c   char to encode.
+   * @param out bits to append the code to.
+   */
+  void encode(char c, BitWriter out) {
+    HuffmanLeaf leaf = leaves[c];
+    if (leaf == null) {
+      writeCode(nyt, out);
+      out.writeBits(c, CHAR_BITS);
+    }
+    else {
+      writeCode(leaf, out);
+    }
+    update(c);
+  }
+
+  /**
+   * Writes the code of a node: the branches from the root down to it.
+   *
+   * @param node node to write the code of.
+   * @param out  bits to append the code to.
+   */
+  private void writeCode(HuffmanNode node, BitWriter out) {
+    // Parent pointers give the bits from the bottom up.
+    int length = 0;
+    for (HuffmanNode n = node; n.parent != null; n = n.parent) {
+      if (length == path.length) {
+        path = Arrays.copyOf(path, length * 2);
+      }
+      path[length++] = n.parent.oneChild == n ? 1 : 0;
+    }
+    for (int i = length - 1; i >= 0; i--) {
+      out.writeBit(path[i]);
+    }
+  }
+
+  /**
+   * Decodes one char, then updates the tree for it.
+   *
+   * @param in bits to decode, advanced past the char.
+   * @return   the decoded char.
+   * @throws NoSuchElementException if in ends partway through a char
+   */
+  char decode(BitReader in) {
+    HuffmanNode n = root;
+    while (n instanceof HuffmanParent) {
+      HuffmanParent p = (HuffmanParent) n;
+      n = in.readBit() == 0 ? p.zeroChild : p.oneChild;
+    }
+    char c = n == nyt ? (char) in.readBits(CHAR_BITS) : ((HuffmanLeaf) n).c;
+    update(c);
+    return c;
+  }
+
+  //=============\\
+  // TREE UPDATE \\
+  //=============\\
+
+  /**
+   * Counts one more of a char, adding its leaf if it is new, and
+   * reshapes the tree to stay a Huffman Tree.
+   *
+   * @param c char just encoded or decoded.
+   */
+  private void update(char c) {
+    HuffmanNode node = leaves[c];
+    if (node == null) {
+      // NYT leaf becomes a parent of a new NYT leaf and the char's leaf,
+      //   which come right after it in sibling order.
+      HuffmanLeaf leaf = new HuffmanLeaf(c, 0);
+      HuffmanLeaf newNyt = new HuffmanLeaf(null, 0);
+      HuffmanParent split = new HuffmanParent(newNyt, leaf);
+      replace(nyt, split);
+      if (size + 2 > order.length) {
+        order = Arrays.copyOf(order, order.length * 2);
+        blocks = Arrays.copyOf(blocks, blocks.length * 2);
+      }
+      // All three weigh 0, the last run in sibling order.
+      Block zeros = blocks[split.number];
+      leaf.number = size;
+      order[size] = leaf;
+      blocks[size++] = zeros;
+      newNyt.number = size;
+      order[size] = newNyt;
+      blocks[size++] = zeros;
+      leaves[c] = leaf;
+      nyt = newNyt;
+      node = leaf;
+    }
+
+    while (node != null) {
+      HuffmanNode leader = order[blocks[node.number].leader];
+      if (leader == node.parent) {
+        // The node's sibling is the NYT leaf, so its parent weighs the
+        //   same and leads the run. If the node is next, both go up
+        //   together. Otherwise the node takes the place of the next node,
+        //   then of its old parent, so that the parent no longer has it
+        //   under it and need not go up.
+        HuffmanNode next = order[leader.number + 1];
+        if (next == node) {
+          increment(leader);
+          increment(node);
+          node = leader.parent;
+          continue;
+        }
+        swap(node, next);
+        swap(node, leader);
+      }
+      else if (leader != node) {
+        swap(node, leader);
+      }
+      increment(node);
+      node = node.parent;
+    }
+  }
+
+  /**
+   * Adds one to the weight of the first node of a run, moving it to the
+   * end of the run before if that has the new weight, or else to a run of
+   * its own.
+   *
+   * @param node node to increment, first of its run.
+   */
+  private void increment(HuffmanNode node) {
+    int i = node.number;
+    Block block = blocks[i];
+    boolean alone = i + 1 == size || blocks[i + 1] != block;
+    if (!alone) {
+      block.leader = i + 1;
+    }
+    node.frequency++;
+    Block before = i == 0 ? null : blocks[i - 1];
+    if (before != null && before.weight == node.frequency) {
+      blocks[i] = before;
+    }
+    else if (alone) {
+      // Reuse the run the node leaves empty.
+      block.weight = node.frequency;
+    }
+    else {
+      blocks[i] = new Block(node.frequency, i);
+    }
+  }
+
+  /**
+   * Puts a new node where an old one was: same parent, same place in
+   * sibling order, and the same weight.
+   *
+   * @param old  node to take out of the tree.
+   * @param node node to put in its place.
+   */
+  private void replace(HuffmanNode old, HuffmanNode node) {
+    HuffmanParent parent = old.parent;
+    if (parent == null) {
+      root = node;
+    }
+    else if (parent.zeroChild == old) {
+      parent.zeroChild = node;
+    }
+    else {
+      parent.oneChild = node;
+    }
+    node.parent = parent;
+    node.number = old.number;
+    order[node.number] = node;
+  }
+
+  /**
+   * Swaps two sub-trees of the same weight, neither inside the other,
+   * along with their places in sibling order. Their runs stay as they
+   * are.
+   *
+   * @param a root of one sub-tree.
+   * @param b root of the other.
+   */
+  private void swap(HuffmanNode a, HuffmanNode b) {
+    HuffmanParent aParent = a.parent;
+    HuffmanParent bParent = b.parent;
+    boolean aZero = aParent.zeroChild == a;
+    boolean bZero = bParent.zeroChild == b;
+    if (aZero) aParent.zeroChild = b; else aParent.oneChild = b;
+    if (bZero) bParent.zeroChild = a; else bParent.oneChild = a;
+    a.parent = bParent;
+    b.parent = aParent;
+
+    int number = a.number;
+    a.number = b.number;
+    b.number = number;
+    order[a.number] = a;
+    order[b.number] = b;
+  }
+
+  //=========\\
+  // STREAMS \\
+  //=========\\
+
+  /**
+   * Encodes a stream of text in one pass, in frames (see HuffmanStreams)
+   * of adaptive codes. Each frame is written and flushed as soon as its
+   * chars are read, so a live stream is sent without waiting for more.
+   *
+   * @param in  text to encode. Read to the end, but not closed.
+   * @param out stream to write frames to. Flushed, but not closed.
+   * @return    number of chars read.
+   * @throws IOException if in cannot be read or out written
+   */
+  static long encode(Reader in, OutputStream out) throws IOException {
+    Object event = HuffmanEvents.SINK.begin(HuffmanEvents.ENCODE);
+    AdaptiveHuffman coder = new AdaptiveHuffman();
+    DataOutputStream data = new DataOutputStream(out);
+    char[] buf = new char[HuffmanStreams.BUFFER_CHARS];
+    BitWriter bits = new BitWriter(HuffmanStreams.BUFFER_CHARS);
+    long total = 0;
+    long totalBits = 0;
+    try {
+      int n;
+      while ((n = in.read(buf)) != -1) {
+        for (int i = 0; i < n; i++) {
+          coder.encode(buf[i], bits);
+          if (bits.bitLength() >= FRAME_BITS) {
+            totalBits += writeFrame(bits, data);
+          }
+        }
+        totalBits += writeFrame(bits, data);
+        data.flush();
+        total += n;
+      }
+      data.writeInt(0); // End of stream.
+      data.flush();
+      return total;
+    }
+    finally {
+      HuffmanEvents.SINK.commit(event, total, totalBits);
+    }
+  }
+
+  /**
+   * Writes the bits so far as a frame, if there are any, and clears them.
+   *
+   * @param bits bits of the frame.
+   * @param out  stream to write the frame to.
+   * @return     number of bits written.
+   * @throws IOException if out cannot be written
+   */
+  private static long writeFrame(BitWriter bits, DataOutputStream out) throws IOException {
+    long written = bits.bitLength();
+    if (written > 0) {
+      out.writeInt((int) written);
+      bits.writeTo(out);
+      bits.clear();
+    }
+    return written;
+  }
+
+  /**
+   * Decodes frames of adaptive codes written by encode(Reader,
+   * OutputStream) back into text.
+   *
+   * @param in  frames to decode. Read to the end frame, but not closed.
+   * @param out text output. Flushed, but not closed.
+   * @return    number of chars decoded.
+   * @throws IOException if in cannot be read or out written, or in ends
+   *         early or holds a frame that does not decode.
+   */
+  static long decode(InputStream in, Writer out) throws IOException {
+    Object event = HuffmanEvents.SINK.begin(HuffmanEvents.DECODE);
+    AdaptiveHuffman coder = new AdaptiveHuffman();
+    DataInputStream data = new DataInputStream(in);
+    byte[] frame = new byte[0];
+    char[] buf = new char[HuffmanStreams.BUFFER_CHARS];
+    int used = 0;
+    long total = 0;
+    long totalBits = 0;
+
+    try {
+      while (true) {
+        int bitCount;
+        try {
+          bitCount = data.readInt();
+        }
+        catch (EOFException eofe) {
+          throw new IOException("Stream ended without an end frame.");
+        }
+        if (bitCount == 0) break;
+        if (bitCount < 0 || bitCount > HuffmanStreams.MAX_FRAME_BITS) {
+          throw new IOException("Bad frame size: " + bitCount + " bits.");
+        }
+
+        int byteCount = (bitCount + 7) >>> 3;
+        if (frame.length < byteCount) {
+          frame = new byte[byteCount];
+        }
+        data.readFully(frame, 0, byteCount);
+        totalBits += bitCount;
+
+        BitReader bits = new BitReader(frame, bitCount);
+        try {
+          while (bits.hasNext()) {
+            buf[used++] = coder.decode(bits);
+            if (used == buf.length) {
+              out.write(buf, 0, used);
+              total += used;
+              used = 0;
+            }
+          }
+        }
+        catch (NoSuchElementException nsee) {
+          throw new IOException("Frame ends partway through a code.");
+        }
+        // Pass each frame on as soon as it is decoded.
+        out.write(buf, 0, used);
+        total += used;
+        used = 0;
+        out.flush();
+      }
+      return total;
+    }
+    finally {
+      HuffmanEvents.SINK.commit(event, total, totalBits);
+    }
+  }
+}
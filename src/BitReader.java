@@ -0,0 +1,207 @@
+import java.nio.ByteBuffer;
+import java.util.NoSuchElementException;
+
+/**
+ * Reads bits back out of packed bytes, most significant bit first. The
+ * bit length is tracked separately so that the unused padding bits at the
+ * end of the last byte are never mistaken for data.
+ *
+ * The next bits are kept in a 64-bit window, refilled with one long read
+ * (or a few bytes, near the end) only once fewer bits are left in it than
+ * are asked for, so most peeks and skips are a single shift.
+ */
+class BitReader {
+  /**
+   * Packed bits. Read with absolute gets, so its position is never moved.
+   */
+  private final ByteBuffer buf;
+  /**
+   * Number of meaningful bits in the buffer.
+   */
+  private final long bitLength;
+  /**
+   * Number of bytes holding meaningful bits.
+   */
+  private final int byteLength;
+  /**
+   * Index of the next bit to read.
+   */
+  private long pos = 0;
+  /**
+   * The bits from pos on, first bit most significant. Bits past the end
+   * of the data are 0.
+   */
+  private long window = 0;
+  /**
+   * Number of bits of window that have been filled in.
+   */
+  private int windowBits = 0;
+
+  /**
+   * Constructs a reader over packed bytes.
+   *
+   * @param bytes     packed bits, as written by BitWriter
+   * @param bitLength number of meaningful bits in bytes
+   */
+  BitReader(byte[] bytes, long bitLength) {
+    this(ByteBuffer.wrap(bytes), bitLength);
+  }
+
+  /**
+   * Constructs a reader over packed bytes starting at the buffer's
+   * current position.
+   *
+   * @param buf       packed bits, as written by BitWriter
+   * @param bitLength number of meaningful bits in buf
+   */
+  BitReader(ByteBuffer buf, long bitLength) {
+    if (bitLength < 0 || bitLength > 8L * buf.remaining()) {
+      throw new IllegalArgumentException("Bit length " + bitLength
+          + " does not fit in " + buf.remaining() + " bytes.");
+    }
+    this.buf = buf.slice();
+    this.bitLength = bitLength;
+    this.byteLength = (int) ((bitLength + 7) >>> 3);
+  }
+
+  /**
+   * Packs a String-style bit sequence of '0' and '1' chars. Any other
+   * chars (such as a trailing newline) are skipped.
+   *
+   * @param bits '0' and '1' chars
+   * @return     reader over the same bits
+   */
+  static BitReader fromBitChars(char[] bits) {
+    BitWriter out = new BitWriter(bits.length / 8 + 1);
+    for (char c : bits) {
+      if (c == '0' || c == '1') {
+        out.writeBit(c - '0');
+      }
+    }
+    return new BitReader(out.toByteArray(), out.bitLength());
+  }
+
+  /**
+   * @return true if there are more bits to read
+   */
+  boolean hasNext() {
+    return pos < bitLength;
+  }
+
+  /**
+   * Returns the next bit.
+   *
+   * @return 0 or 1
+   * @throws NoSuchElementException if all bits have been read
+   */
+  int readBit() {
+    if (pos >= bitLength) {
+      throw new NoSuchElementException("Only " + bitLength + " bits.");
+    }
+    if (windowBits == 0) refill();
+    int b = (int) (window >>> 63);
+    window <<= 1;
+    windowBits--;
+    pos++;
+    return b;
+  }
+
+  /**
+   * Returns the next n bits.
+   * 
+   * @param n number of bits to read, 0 to 32
+   * @return  the bits, right-aligned, first bit most significant
+   * @throws NoSuchElementException if fewer than n bits remain
+   */
+  int readBits(int n) {
+    if (n == 0) return 0;
+    int bits = peekBits(n);
+    skipBits(n);
+    return bits;
+  }
+  
+  /**
+   * Returns the next n bits without consuming them. Bits past the end
+   * read as 0, so callers must check remaining() before trusting them.
+   * 
+   * @param n number of bits to peek, 1 to 32
+   * @return  the bits, right-aligned, first bit most significant
+   */
+  int peekBits(int n) {
+    if (windowBits < n) refill();
+    return (int) (window >>> (64 - n));
+  }
+  
+  /**
+   * Fills the window with the bits from pos on: at least 57 of them,
+   * since pos may be anywhere in its first byte.
+   */
+  private void refill() {
+    int index = (int) (pos >>> 3);
+    long bits;
+    if (index + 8 <= byteLength) {
+      bits = buf.getLong(index);
+    }
+    else {
+      // Near the end: gather what bytes there are, 0s after.
+      bits = 0;
+      for (int i = index; i < index + 8; i++) {
+        bits <<= 8;
+        if (i < byteLength) {
+          bits |= buf.get(i) & 0xFF;
+        }
+      }
+    }
+    int offset = (int) (pos & 7);
+    window = bits << offset;
+    windowBits = 64 - offset;
+  }
+  
+  /**
+   * Advances past bits without reading them.
+   * 
+   * @param n number of bits to skip
+   * @throws NoSuchElementException if fewer than n bits remain
+   */
+  void skipBits(int n) {
+    if (n > remaining()) {
+      throw new NoSuchElementException("Only " + bitLength + " bits.");
+    }
+    pos += n;
+    if (n < windowBits) {
+      window <<= n;
+      windowBits -= n;
+    }
+    else {
+      windowBits = 0;
+    }
+  }
+  
+  /**
+   * @return index of the next bit to read
+   */
+  long position() {
+    return pos;
+  }
+  
+  /**
+   * Moves to any bit, for instance one returned by position().
+   * 
+   * @param bitIndex index of the next bit to read
+   */
+  void seek(long bitIndex) {
+    if (bitIndex < 0 || bitIndex > bitLength) {
+      throw new IllegalArgumentException("Bit " + bitIndex
+          + " is outside 0-" + bitLength + ".");
+    }
+    pos = bitIndex;
+    windowBits = 0;
+  }
+  
+  /**
+   * @return number of bits not yet read
+   */
+  long remaining() {
+    return bitLength - pos;
+  }
+}
@@ -0,0 +1,197 @@
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.Arrays;
+
+/**
+ * Packs bits into real bytes, most significant bit first. An encoded
+ * text takes one bit per bit instead of one whole char per bit.
+ *
+ * Bits are gathered in a 64-bit accumulator and moved to the buffer a
+ * whole byte at a time, so a code of any length is a shift, an OR, and
+ * a byte store or few, rather than a loop over its bits.
+ */
+class BitWriter {
+  /**
+   * Packed bytes written so far. Grows as needed. Bits of the last,
+   * partial byte are only in acc until flushPartial() copies them here.
+   */
+  private byte[] buf;
+  /**
+   * Number of bits written so far. The last byte may be partially used.
+   */
+  private long bitLength = 0;
+  /**
+   * Bits of the partial byte after the whole bytes in buf, right-aligned.
+   * There are bitLength % 8 of them; higher bits are left over from
+   * earlier bytes and are ignored.
+   */
+  private long acc = 0;
+
+  /**
+   * Constructs an empty writer with a small starting buffer.
+   */
+  BitWriter() {
+    this(64);
+  }
+
+  /**
+   * Constructs an empty writer.
+   *
+   * @param initialBytes starting buffer size, in bytes
+   */
+  BitWriter(int initialBytes) {
+    buf = new byte[Math.max(1, initialBytes)];
+  }
+
+  /**
+   * Appends a single bit.
+   *
+   * @param bit 0 or 1 (only the lowest bit is used)
+   */
+  void writeBit(int bit) {
+    acc = acc << 1 | (bit & 1);
+    bitLength++;
+    if ((bitLength & 7) == 0) {
+      int index = (int) (bitLength >>> 3) - 1;
+      ensureCapacity(index + 1);
+      buf[index] = (byte) acc;
+    }
+  }
+
+  /**
+   * Appends the bits of a bit String such as "0110".
+   *
+   * @param bitStr '0' and '1' chars to append, left to right
+   */
+  void writeBits(String bitStr) {
+    for (int i = 0; i < bitStr.length(); i++) {
+      writeBit(bitStr.charAt(i) - '0');
+    }
+  }
+
+  /**
+   * Appends the lowest bits of an int, most significant first.
+   *
+   * @param value bits to append, right-aligned
+   * @param count number of bits to append, 0 to 32
+   */
+  void writeBits(int value, int count) {
+    if (count == 0) return;
+    // At most 7 pending bits plus 32 new ones: fits with room to spare.
+    int pending = (int) (bitLength & 7);
+    acc = acc << count | (value & (-1L >>> (64 - count)));
+    int index = (int) (bitLength >>> 3);
+    bitLength += count;
+    int whole = (pending + count) >>> 3;
+    ensureCapacity(index + whole);
+    for (int left = pending + count - 8; left >= 0; left -= 8) {
+      buf[index++] = (byte) (acc >>> left);
+    }
+  }
+
+  /**
+   * Appends all bits of another writer, right after the bits already
+   * written. Neither side needs to end on a byte boundary.
+   *
+   * @param other bits to append; not changed
+   */
+  void append(BitWriter other) {
+    flushPartial();
+    other.flushPartial();
+    int start = (int) (bitLength >>> 3);
+    int shift = (int) (bitLength & 7);
+    int count = (int) ((other.bitLength + 7) >>> 3);
+    ensureCapacity(start + count + 1);
+    if (shift == 0) {
+      System.arraycopy(other.buf, 0, buf, start, count);
+    }
+    else {
+      // Each appended byte straddles two bytes here.
+      for (int i = 0; i < count; i++) {
+        int b = other.buf[i] & 0xFF;
+        buf[start + i] |= b >>> shift;
+        buf[start + i + 1] = (byte) (b << (8 - shift));
+      }
+    }
+    bitLength += other.bitLength;
+    // Pick the new partial byte back up from the buffer.
+    int pending = (int) (bitLength & 7);
+    acc = pending == 0 ? 0 : (buf[(int) (bitLength >>> 3)] & 0xFF) >>> (8 - pending);
+  }
+
+  /**
+   * Copies the bits of the partial byte, if any, from acc to the buffer,
+   * padded with 0s. Later writes overwrite that byte, so this can be
+   * done any number of times.
+   */
+  private void flushPartial() {
+    int pending = (int) (bitLength & 7);
+    if (pending > 0) {
+      int index = (int) (bitLength >>> 3);
+      ensureCapacity(index + 1);
+      buf[index] = (byte) (acc << (8 - pending));
+    }
+  }
+
+  /**
+   * Grows the buffer if needed.
+   *
+   * @param bytes number of bytes the buffer must hold
+   */
+  private void ensureCapacity(int bytes) {
+    if (bytes > buf.length) {
+      buf = Arrays.copyOf(buf, Math.max(bytes, buf.length * 2));
+    }
+  }
+
+  /**
+   * Discards all written bits, keeping the buffer for reuse.
+   */
+  void clear() {
+    bitLength = 0;
+    acc = 0;
+  }
+
+  /**
+   * Writes the packed bits to a stream, without copying them first.
+   *
+   * @param out stream to write (bitLength + 7) / 8 bytes to
+   * @throws IOException if out cannot be written to
+   */
+  void writeTo(OutputStream out) throws IOException {
+    flushPartial();
+    out.write(buf, 0, (int) ((bitLength + 7) >>> 3));
+  }
+
+  /**
+   * @return number of bits written so far
+   */
+  long bitLength() {
+    return bitLength;
+  }
+
+  /**
+   * Returns the packed bits. Any unused bits of the last byte are 0.
+   *
+   * @return copy of the written bytes, exactly (bitLength + 7) / 8 long
+   */
+  byte[] toByteArray() {
+    flushPartial();
+    return Arrays.copyOf(buf, (int) ((bitLength + 7) >>> 3));
+  }
+
+  /**
+   * Renders the written bits as a String of '0's and '1's, mostly
+   * useful for display.
+   */
+  @Override
+  public String toString() {
+    flushPartial();
+    StringBuilder sb = new StringBuilder();
+    for (long i = 0; i < bitLength; i++) {
+      int b = buf[(int) (i >>> 3)] >>> (7 - (i & 7));
+      sb.append((b & 1) == 0 ? '0' : '1');
+    }
+    return sb.toString();
+  }
+}
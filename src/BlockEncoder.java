@@ -0,0 +1,162 @@
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * Encodes large texts in parallel. The text is split into fixed-size
+ * blocks, and each block is encoded on a ForkJoinPool thread into its own
+ * bits. All blocks share one codebook, which is only read while encoding.
+ *
+ * The blocks' bits can then be joined back into one bit sequence,
+ * identical to what Driver.encode() would produce, or kept separate as
+ * the frames read by HuffmanStreams.decode().
+ */
+class BlockEncoder {
+  /**
+   * Default chars per block. Large enough that each task does real work,
+   * small enough to keep every core busy on medium-sized texts.
+   */
+  final static int BLOCK_CHARS = 1 << 16;
+
+  // Static methods only.
+  private BlockEncoder() {
+  }
+
+  /**
+   * Task encoding a range of blocks, splitting itself in half until
+   * there is only one block left.
+   */
+  private static class EncodeTask extends RecursiveAction {
+    private final static long serialVersionUID = 1L;
+
+    private final HuffmanCodebook codes;
+    private final char[] text;
+    private final int blockChars;
+    private final BitWriter[] results;
+    private final int first;
+    private final int last;
+
+    /**
+     * @param codes      code for each char.
+     * @param text       whole text being encoded.
+     * @param blockChars chars per block.
+     * @param results    bits of each block, filled in by this task.
+     * @param first      index of first block to encode.
+     * @param last       one past the index of the last block to encode.
+     */
+    EncodeTask(HuffmanCodebook codes, char[] text, int blockChars,
+               BitWriter[] results, int first, int last) {
+      this.codes = codes;
+      this.text = text;
+      this.blockChars = blockChars;
+      this.results = results;
+      this.first = first;
+      this.last = last;
+    }
+
+    @Override
+    protected void compute() {
+      if (last - first > 1) {
+        int mid = (first + last) >>> 1;
+        invokeAll(new EncodeTask(codes, text, blockChars, results, first, mid),
+                  new EncodeTask(codes, text, blockChars, results, mid, last));
+        return;
+      }
+      int start = first * blockChars;
+      int end = Math.min(text.length, start + blockChars);
+      BitWriter bits = new BitWriter(blockChars / 2);
+      for (int i = start; i < end; i++) {
+        int len = codes.length(text[i]);
+        if (len > 0) {
+          bits.writeBits(codes.code(text[i]), len);
+        }
+      }
+      results[first] = bits;
+    }
+  }
+
+  /**
+   * Encodes each block of a text in parallel.
+   *
+   * @param codes      code for each char.
+   * @param text       text to encode.
+   * @param blockChars chars per block.
+   * @param pool       threads to encode on.
+   * @return           bits of each block, in order.
+   */
+  static BitWriter[] encodeBlocks(HuffmanCodebook codes, char[] text,
+                                  int blockChars, ForkJoinPool pool) {
+    if (blockChars <= 0) {
+      throw new IllegalArgumentException("Block size must be positive: " + blockChars);
+    }
+    int blocks = (int) ((text.length + (long) blockChars - 1) / blockChars);
+    BitWriter[] results = new BitWriter[blocks];
+    if (blocks > 0) {
+      pool.invoke(new EncodeTask(codes, text, blockChars, results, 0, blocks));
+    }
+    return results;
+  }
+
+  /**
+   * Encodes text in parallel blocks, then joins the blocks' bits. Ignores
+   * chars absent from the codebook, just like Driver.encode(), and gives
+   * the same bits.
+   *
+   * @param codes      code for each char.
+   * @param text       text to encode.
+   * @param blockChars chars per block.
+   * @param pool       threads to encode on.
+   * @return           the encoded version of the text.
+   */
+  static BitWriter encode(HuffmanCodebook codes, char[] text,
+                          int blockChars, ForkJoinPool pool) {
+    Object event = HuffmanEvents.SINK.begin(HuffmanEvents.ENCODE);
+    long total = 0;
+    try {
+      BitWriter[] blocks = encodeBlocks(codes, text, blockChars, pool);
+      for (BitWriter block : blocks) {
+        total += block.bitLength();
+      }
+      BitWriter output = new BitWriter((int) ((total + 7) / 8));
+      for (BitWriter block : blocks) {
+        output.append(block);
+      }
+      return output;
+    }
+    finally {
+      HuffmanEvents.SINK.commit(event, text.length, total);
+    }
+  }
+
+  /**
+   * Encodes text in parallel blocks, writing each block as a frame (see
+   * HuffmanStreams) followed by the end frame.
+   *
+   * @param codes      code for each char.
+   * @param text       text to encode.
+   * @param blockChars chars per block; at most HuffmanStreams.BUFFER_CHARS
+   *                   so frames stay within the size decoders accept.
+   * @param pool       threads to encode on.
+   * @param out        stream to write frames to. Flushed, but not closed.
+   * @throws IOException if out cannot be written
+   */
+  static void encodeFramed(HuffmanCodebook codes, char[] text, int blockChars,
+                           ForkJoinPool pool, OutputStream out) throws IOException {
+    if (blockChars > HuffmanStreams.BUFFER_CHARS) {
+      throw new IllegalArgumentException("Framed blocks hold at most "
+          + HuffmanStreams.BUFFER_CHARS + " chars, not " + blockChars + ".");
+    }
+    DataOutputStream data = new DataOutputStream(out);
+    for (BitWriter block : encodeBlocks(codes, text, blockChars, pool)) {
+      // Empty frames would end the stream early.
+      if (block.bitLength() > 0) {
+        data.writeInt((int) block.bitLength());
+        block.writeTo(data);
+      }
+    }
+    data.writeInt(0); // End of stream.
+    data.flush();
+  }
+}
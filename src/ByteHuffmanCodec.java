@@ -0,0 +1,263 @@
+import java.io.ByteArrayOutputStream;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+/**
+ * Huffman codec over raw bytes rather than chars. The alphabet is always
+ * the 256 byte values, so every table is a plain array of 256 entries,
+ * and files are encoded exactly as stored: no charset decoding on the way
+ * in, no charset encoding on the way out, and binary files work too.
+ *
+ * Codes are canonical, so a codec is saved as just its code lengths, in
+ * the same header format as char trees (see HuffmanCodebook.writeLengths()).
+ */
+class ByteHuffmanCodec {
+  /**
+   * Number of possible bytes.
+   */
+  final static int ALPHABET_SIZE = 256;
+
+  /**
+   * Code bits of each byte, right-aligned. Meaningless where the
+   * length is 0.
+   */
+  private final int[] codes = new int[ALPHABET_SIZE];
+  /**
+   * Code length of each byte, or 0 if the byte has no code.
+   */
+  private final byte[] lengths = new byte[ALPHABET_SIZE];
+  /**
+   * The same codes, for writing the header.
+   */
+  private final HuffmanCodebook book;
+  /**
+   * Built on first decode.
+   */
+  private TableDecoder decoder;
+
+  /**
+   * Constructs a codec with canonical codes of the given lengths.
+   *
+   * @param book canonical codebook over byte values, at least 2 codes.
+   */
+  private ByteHuffmanCodec(HuffmanCodebook book) {
+    this.book = book;
+    for (int b = 0; b < Math.min(ALPHABET_SIZE, book.size()); b++) {
+      lengths[b] = (byte) book.length(b);
+      if (lengths[b] > 0) {
+        codes[b] = book.code(b);
+      }
+    }
+  }
+
+  //==================\\
+  // BUILDING A CODEC \\
+  //==================\\
+
+  /**
+   * Adds the bytes between a buffer's position and limit to a histogram.
+   * The buffer's position is not moved.
+   *
+   * @param data   bytes to count.
+   * @param counts histogram to add to, ALPHABET_SIZE long.
+   */
+  static void count(ByteBuffer data, long[] counts) {
+    if (data.hasArray()) {
+      byte[] array = data.array();
+      int end = data.arrayOffset() + data.limit();
+      for (int i = data.arrayOffset() + data.position(); i < end; i++) {
+        counts[array[i] & 0xFF]++;
+      }
+    }
+    else {
+      for (int i = data.position(); i < data.limit(); i++) {
+        counts[data.get(i) & 0xFF]++;
+      }
+    }
+  }
+
+  /**
+   * Builds a codec for the bytes between a buffer's position and limit.
+   *
+   * @param data  bytes to base frequencies on. Position is not moved.
+   * @param limit longest code length allowed, or 0 for no limit.
+   * @return      codec with codes for every byte in data.
+   */
+  static ByteHuffmanCodec build(ByteBuffer data, int limit) {
+    long[] counts = new long[ALPHABET_SIZE];
+    count(data, counts);
+    return fromCounts(counts, limit);
+  }
+
+  /**
+   * Builds a codec from a histogram of bytes. Bytes with a count of 0
+   * get no code, except that at least 2 bytes always get codes, since a
+   * lone code would take 0 bits.
+   *
+   * @param counts frequency of each byte, ALPHABET_SIZE long.
+   * @param limit  longest code length allowed, or 0 for no limit.
+   * @return       codec with codes for every counted byte.
+   */
+  static ByteHuffmanCodec fromCounts(long[] counts, int limit) {
+    // Least frequent first, ties in byte order. Packing the count above
+    //   the byte sorts by both at once.
+    long[] keys = new long[ALPHABET_SIZE];
+    int n = 0;
+    for (int b = 0; b < ALPHABET_SIZE; b++) {
+      if (counts[b] > 0) keys[n++] = counts[b] << 8 | b;
+    }
+    // Pad out to 2 bytes with uncounted ones, which sort first.
+    for (int b = 0; n < 2; b++) {
+      if (counts[b] == 0) keys[n++] = b;
+    }
+    keys = Arrays.copyOf(keys, n);
+    Arrays.sort(keys);
+
+    long[] freqs = new long[n];
+    for (int i = 0; i < n; i++) {
+      freqs[i] = keys[i] >>> 8;
+    }
+    long[] depths = freqs.clone();
+    CodeLengths.huffman(depths);
+    if (limit <= 0) limit = HuffmanCodebook.MAX_CODE_LENGTH;
+    limit = Math.max(limit, CodeLengths.minLimit(n));
+
+    byte[] lengths = new byte[ALPHABET_SIZE];
+    byte[] limited = depths[0] > limit ? CodeLengths.packageMerge(freqs, limit) : null;
+    for (int i = 0; i < n; i++) {
+      lengths[(int) (keys[i] & 0xFF)] = limited != null ? limited[i] : (byte) depths[i];
+    }
+    return new ByteHuffmanCodec(HuffmanCodebook.canonical(lengths));
+  }
+
+  /**
+   * Loads a codec from a code length header written by writeLengths().
+   *
+   * @param bits header bits, advanced past the header.
+   * @return     codec with those code lengths.
+   * @throws IllegalArgumentException if the lengths are invalid or
+   *         are not for bytes
+   */
+  static ByteHuffmanCodec fromCodeLengths(BitReader bits) {
+    byte[] lengths = HuffmanCodebook.readLengths(bits);
+    if (lengths.length > ALPHABET_SIZE) {
+      throw new IllegalArgumentException("Code lengths are not for bytes.");
+    }
+    HuffmanCodebook book = HuffmanCodebook.canonical(lengths);
+    if (book.count() < 2) {
+      throw new IllegalArgumentException("Codec needs at least 2 codes.");
+    }
+    return new ByteHuffmanCodec(book);
+  }
+
+  /**
+   * Writes this codec's code lengths, enough for fromCodeLengths().
+   *
+   * @param out bits to append the header to.
+   */
+  void writeLengths(BitWriter out) {
+    book.writeLengths(out);
+  }
+
+  /**
+   * @param b byte value, 0-255.
+   * @return  number of bits in the byte's code, 0 if it has none.
+   */
+  int length(int b) {
+    return lengths[b];
+  }
+
+  //=================\\
+  // ENCODE / DECODE \\
+  //=================\\
+
+  /**
+   * Encodes the bytes between a buffer's position and limit, advancing
+   * its position to the limit. Bytes with no code are skipped.
+   *
+   * @param in  bytes to encode.
+   * @param out bits to append the codes to.
+   */
+  void encode(ByteBuffer in, BitWriter out) {
+    while (in.hasRemaining()) {
+      int b = in.get() & 0xFF;
+      int len = lengths[b];
+      if (len > 0) {
+        out.writeBits(codes[b], len);
+      }
+    }
+  }
+
+  /**
+   * Encodes a whole array of bytes.
+   *
+   * @param in bytes to encode.
+   * @return   the encoded bytes.
+   */
+  BitWriter encode(byte[] in) {
+    Object event = HuffmanEvents.SINK.begin(HuffmanEvents.ENCODE);
+    BitWriter out = new BitWriter(in.length / 2 + 1);
+    encode(ByteBuffer.wrap(in), out);
+    HuffmanEvents.SINK.commit(event, in.length, out.bitLength());
+    return out;
+  }
+
+  /**
+   * Returns the lookup-table decoder for this codec, building it the
+   * first time it is needed.
+   *
+   * @return decoder for this codec's codes
+   */
+  private TableDecoder decoder() {
+    if (decoder == null) {
+      decoder = new TableDecoder(FlatTree.fromCodebook(book));
+    }
+    return decoder;
+  }
+
+  /**
+   * Decodes bytes into a buffer until the bits or the buffer run out.
+   *
+   * @param bits packed bits, advanced past the bytes decoded.
+   * @param out  buffer to decode into, advanced past the bytes decoded.
+   * @return     number of bytes decoded.
+   * @throws IllegalStateException if the bits end partway through a code
+   */
+  int decode(BitReader bits, ByteBuffer out) {
+    TableDecoder table = decoder();
+    int start = out.position();
+    while (bits.hasNext() && out.hasRemaining()) {
+      int b = table.decode(bits);
+      if (b < 0) {
+        throw new IllegalStateException("Ran out of bits during decode.");
+      }
+      out.put((byte) b);
+    }
+    return out.position() - start;
+  }
+
+  /**
+   * Decodes all remaining bits.
+   *
+   * @param bits packed bits, read to the end.
+   * @return     the decoded bytes.
+   * @throws IllegalStateException if the bits end partway through a code
+   */
+  byte[] decode(BitReader bits) {
+    Object event = HuffmanEvents.SINK.begin(HuffmanEvents.DECODE);
+    ByteArrayOutputStream all = new ByteArrayOutputStream();
+    ByteBuffer buf = ByteBuffer.allocate(1 << 16);
+    long bitsLeft = bits.remaining();
+    try {
+      while (bits.hasNext()) {
+        buf.clear();
+        decode(bits, buf);
+        all.write(buf.array(), 0, buf.position());
+      }
+      return all.toByteArray();
+    }
+    finally {
+      HuffmanEvents.SINK.commit(event, all.size(), bitsLeft - bits.remaining());
+    }
+  }
+}
@@ -0,0 +1,130 @@
+import java.util.Arrays;
+
+/**
+ * The distinct chars of a text and how often each occurs: a histogram
+ * with no slots for the chars that never occur. A text of a few hundred
+ * chars has at most a few hundred of them, so trees and caches that keep
+ * or walk its counts pay for those, not for every possible char.
+ *
+ * Chars are in increasing order, each with a count of at least 1. Never
+ * changes once made; the arrays are shared, not copied, so callers must
+ * not change them either.
+ */
+final class CharCounts {
+  /**
+   * Histogram for counting text into, one per thread, so counting does
+   * not allocate and clear one of HuffmanTree.ALPHABET_SIZE slots each
+   * time. All 0s between uses.
+   */
+  private final static ThreadLocal<long[]> SCRATCH = new ThreadLocal<long[]>() {
+    @Override
+    protected long[] initialValue() {
+      return new long[HuffmanTree.ALPHABET_SIZE];
+    }
+  };
+
+  /**
+   * Distinct chars counted, in increasing order.
+   */
+  final int[] chars;
+  /**
+   * Number of times each of chars occurs.
+   */
+  final long[] counts;
+  /**
+   * Sum of counts: the length of the text counted.
+   */
+  final long total;
+
+  /**
+   * @param chars  distinct chars, in increasing order.
+   * @param counts count of each, at least 1.
+   */
+  private CharCounts(int[] chars, long[] counts) {
+    this.chars = chars;
+    this.counts = counts;
+    long sum = 0;
+    for (long count : counts) {
+      sum += count;
+    }
+    total = sum;
+  }
+
+  /**
+   * Counts the chars of a text. They are counted into this thread's
+   * scratch histogram (see HuffmanTree.countChars()), then only the slots
+   * of chars found are read back and cleared: for a text shorter than
+   * the alphabet, by walking the text again rather than every slot.
+   *
+   * @param text text to count.
+   * @return     its distinct chars and their counts.
+   */
+  static CharCounts of(char[] text) {
+    long[] histogram = SCRATCH.get();
+    HuffmanTree.countChars(text, 0, text.length, histogram);
+    CharCounts result;
+    if (text.length >= HuffmanTree.ALPHABET_SIZE) {
+      result = of(histogram);
+    }
+    else {
+      // Negate each count the first time its char turns up, so it is only
+      //   taken once.
+      int[] found = new int[text.length];
+      int n = 0;
+      for (char c : text) {
+        if (histogram[c] > 0) {
+          histogram[c] = -histogram[c];
+          found[n++] = c;
+        }
+      }
+      Arrays.sort(found, 0, n);
+      int[] chars = Arrays.copyOf(found, n);
+      long[] counts = new long[n];
+      for (int i = 0; i < n; i++) {
+        counts[i] = -histogram[chars[i]];
+      }
+      result = new CharCounts(chars, counts);
+    }
+    for (int c : result.chars) {
+      histogram[c] = 0;
+    }
+    return result;
+  }
+
+  /**
+   * Takes the chars counted in a full histogram, such as one counted a
+   * buffer at a time from a stream.
+   *
+   * @param histogram frequency of each char, HuffmanTree.ALPHABET_SIZE
+   *                  long. Not kept.
+   * @return          its distinct chars and their counts.
+   * @throws IllegalArgumentException if histogram is the wrong length
+   */
+  static CharCounts of(long[] histogram) {
+    if (histogram.length != HuffmanTree.ALPHABET_SIZE) {
+      throw new IllegalArgumentException("Histogram must have "
+          + HuffmanTree.ALPHABET_SIZE + " slots, not " + histogram.length + ".");
+    }
+    int n = 0;
+    for (int c = 0; c < histogram.length; c++) {
+      if (histogram[c] > 0) n++;
+    }
+    int[] chars = new int[n];
+    long[] counts = new long[n];
+    n = 0;
+    for (int c = 0; c < histogram.length; c++) {
+      if (histogram[c] > 0) {
+        chars[n] = c;
+        counts[n++] = histogram[c];
+      }
+    }
+    return new CharCounts(chars, counts);
+  }
+
+  /**
+   * @return number of distinct chars
+   */
+  int size() {
+    return chars.length;
+  }
+}
@@ -0,0 +1,178 @@
+/**
+ * Computes code lengths directly from frequencies, without building a
+ * tree of nodes. Any set of lengths can be turned into codes (and back
+ * into a tree) with HuffmanCodebook.canonical().
+ */
+class CodeLengths {
+  // Static methods only.
+  private CodeLengths() {
+  }
+
+  /**
+   * Computes optimal (Huffman) code lengths in place, in linear time,
+   * with the algorithm of Moffat and Katajainen. Equivalent to building a
+   * Huffman Tree, but with no nodes and no priority queue: since the
+   * frequencies are sorted, the next two smallest are always at the front
+   * of either the leaves not yet merged or the parents made so far, and
+   * the parents are kept in the front of the same array.
+   *
+   * Codes can be longer than any int for unusual frequencies (such as
+   * powers of 2); limit them with packageMerge() if need be.
+   *
+   * @param a frequency of each char, sorted from least to most frequent;
+   *          at least 2 chars. Replaced by the code length of each char,
+   *          which will be from longest to shortest.
+   */
+  static void huffman(long[] a) {
+    int n = a.length;
+    if (n < 2) {
+      throw new IllegalArgumentException("Need at least 2 chars, not " + n + ".");
+    }
+
+    // Phase 1: merge, like building the tree. a[next] becomes the weight
+    //   of the next parent; once a parent is merged into another, its slot
+    //   holds the index of that parent instead.
+    a[0] += a[1];
+    int root = 0;  // Next parent to merge.
+    int leaf = 2;  // Next leaf to merge.
+    for (int next = 1; next < n - 1; next++) {
+      // First child: smallest parent or leaf. Ties go to the leaf, which
+      //   keeps the longest code as short as possible.
+      if (leaf >= n || a[root] < a[leaf]) {
+        a[next] = a[root];
+        a[root++] = next;
+      }
+      else {
+        a[next] = a[leaf++];
+      }
+      // Second child.
+      if (leaf >= n || (root < next && a[root] < a[leaf])) {
+        a[next] += a[root];
+        a[root++] = next;
+      }
+      else {
+        a[next] += a[leaf++];
+      }
+    }
+
+    // Phase 2: replace each parent's index with its depth. The last
+    //   parent made is the root.
+    a[n - 2] = 0;
+    for (int next = n - 3; next >= 0; next--) {
+      a[next] = a[(int) a[next]] + 1;
+    }
+
+    // Phase 3: every node at a depth that is not a parent is a leaf.
+    //   Hand out leaf depths from the right, shallowest first.
+    int available = 1;
+    int used = 0;
+    int depth = 0;
+    root = n - 2;
+    int next = n - 1;
+    while (available > 0) {
+      while (root >= 0 && a[root] == depth) {
+        used++;
+        root--;
+      }
+      while (available > used) {
+        a[next--] = depth;
+        available--;
+      }
+      available = 2 * used;
+      depth++;
+      used = 0;
+    }
+  }
+
+  /**
+   * Computes optimal code lengths that are no longer than a limit, using
+   * the package-merge algorithm.
+   *
+   * Think of each char as a set of coins, one per possible bit of its
+   * code, each worth its frequency. The cheapest way to pay for a complete
+   * code is to pick the 2n - 2 cheapest coins, where coins for the deeper
+   * bits may be "packaged" in pairs to stand in for one shallower coin.
+   * A char's code length is the number of its coins picked.
+   *
+   * @param freqs frequency of each char, sorted from least to most
+   *              frequent; at least 2 chars.
+   * @param limit longest code length allowed.
+   * @return      code length of each char, in the same order as freqs.
+   * @throws IllegalArgumentException if 2^limit is less than the number
+   *         of chars, so no code can fit
+   */
+  static byte[] packageMerge(long[] freqs, int limit) {
+    int n = freqs.length;
+    if (n < 2) {
+      throw new IllegalArgumentException("Need at least 2 chars, not " + n + ".");
+    }
+    if (limit < minLimit(n)) {
+      throw new IllegalArgumentException(n + " chars do not fit in codes of "
+          + limit + " bits.");
+    }
+
+    // leaves[level][i] is the char index of item i at that level, or -1
+    //   if the item is a package of two items of the level below. Level 0
+    //   holds the deepest coins (just the chars); each level up merges the
+    //   chars with packages of the level below.
+    int[][] leaves = new int[limit][];
+    long[] weights = freqs.clone();
+    leaves[0] = new int[n];
+    for (int i = 0; i < n; i++) {
+      leaves[0][i] = i;
+    }
+
+    for (int level = 1; level < limit; level++) {
+      int packages = weights.length / 2;
+      long[] merged = new long[n + packages];
+      int[] mergedLeaves = new int[n + packages];
+      int c = 0;
+      int p = 0;
+      for (int i = 0; i < merged.length; i++) {
+        long packageWeight = p < packages
+            ? weights[2 * p] + weights[2 * p + 1] : Long.MAX_VALUE;
+        // On a tie take the char, which keeps packages (and so deeper
+        //   codes) to a minimum.
+        if (c < n && freqs[c] <= packageWeight) {
+          merged[i] = freqs[c];
+          mergedLeaves[i] = c++;
+        }
+        else {
+          merged[i] = packageWeight;
+          mergedLeaves[i] = -1;
+          p++;
+        }
+      }
+      weights = merged;
+      leaves[level] = mergedLeaves;
+    }
+
+    // Pick the cheapest 2n - 2 items at the top level. The picked
+    //   packages at each level are made of the first items of the level
+    //   below, so the picks are always a prefix of each level.
+    byte[] lengths = new byte[n];
+    int picked = 2 * n - 2;
+    for (int level = limit - 1; level >= 0; level--) {
+      int packages = 0;
+      for (int i = 0; i < picked; i++) {
+        int leaf = leaves[level][i];
+        if (leaf >= 0) {
+          lengths[leaf]++;
+        }
+        else {
+          packages++;
+        }
+      }
+      picked = 2 * packages;
+    }
+    return lengths;
+  }
+
+  /**
+   * @param chars number of chars to encode, at least 1.
+   * @return      shortest length limit that can fit that many codes.
+   */
+  static int minLimit(int chars) {
+    return Math.max(1, 32 - Integer.numberOfLeadingZeros(chars - 1));
+  }
+}
@@ -0,0 +1,126 @@
+import java.lang.reflect.Constructor;
+import java.util.zip.Checksum;
+
+/**
+ * CRC-32C (Castagnoli) checksums, as used by iSCSI, SCTP and ext4. It
+ * catches the same errors as CRC-32, but CPUs since SSE 4.2 and ARMv8
+ * compute it in hardware.
+ *
+ * java.util.zip.CRC32C does just that, but only from Java 9, while these
+ * sources stay on Java 8. create() returns one when this JVM has it, and
+ * otherwise this class, which computes the same values 8 bytes at a time
+ * from tables (slicing-by-8).
+ */
+final class Crc32c implements Checksum {
+  /**
+   * The CRC-32C polynomial, bit-reversed.
+   */
+  private final static int POLY = 0x82F63B78;
+
+  /**
+   * 8 tables of 256 entries, one after the other. Entry n of table 0 is
+   * the CRC of byte n; entry n of table k is the CRC of byte n followed by
+   * k zero bytes.
+   */
+  private final static int[] TABLES = tables();
+
+  /**
+   * Constructor of java.util.zip.CRC32C, or null before Java 9.
+   */
+  private final static Constructor<? extends Checksum> JDK_CRC32C = jdkCrc32c();
+
+  /**
+   * CRC so far, inverted.
+   */
+  private int crc = ~0;
+
+  /**
+   * Creates a CRC-32C checksum, computed in hardware if the JVM can.
+   *
+   * @return new checksum, with nothing added yet.
+   */
+  static Checksum create() {
+    if (JDK_CRC32C != null) {
+      try {
+        return JDK_CRC32C.newInstance();
+      }
+      catch (ReflectiveOperationException e) {
+        // Fall through to the tables.
+      }
+    }
+    return new Crc32c();
+  }
+
+  /**
+   * @return constructor of java.util.zip.CRC32C, or null if there is none
+   */
+  private static Constructor<? extends Checksum> jdkCrc32c() {
+    try {
+      return Class.forName("java.util.zip.CRC32C").asSubclass(Checksum.class)
+          .getConstructor();
+    }
+    catch (ReflectiveOperationException | LinkageError e) {
+      return null;
+    }
+  }
+
+  /**
+   * @return the 8 tables used by update(byte[], int, int)
+   */
+  private static int[] tables() {
+    int[] t = new int[8 * 256];
+    for (int n = 0; n < 256; n++) {
+      int c = n;
+      for (int bit = 0; bit < 8; bit++) {
+        c = (c & 1) != 0 ? (c >>> 1) ^ POLY : c >>> 1;
+      }
+      t[n] = c;
+    }
+    for (int i = 256; i < t.length; i++) {
+      int prev = t[i - 256];
+      t[i] = (prev >>> 8) ^ t[prev & 0xFF];
+    }
+    return t;
+  }
+
+  @Override
+  public void update(int b) {
+    crc = (crc >>> 8) ^ TABLES[(crc ^ b) & 0xFF];
+  }
+
+  @Override
+  public void update(byte[] b, int off, int len) {
+    if (off < 0 || len < 0 || off > b.length - len) {
+      throw new ArrayIndexOutOfBoundsException();
+    }
+    int c = crc;
+    int end = off + len;
+    // Fold in 8 bytes at a time: the CRC xored with the first 4, and the
+    //   next 4, each byte looked up in the table for its distance from
+    //   the end.
+    for (; end - off >= 8; off += 8) {
+      int lo = c ^ ((b[off] & 0xFF) | (b[off + 1] & 0xFF) << 8
+                  | (b[off + 2] & 0xFF) << 16 | b[off + 3] << 24);
+      int hi = (b[off + 4] & 0xFF) | (b[off + 5] & 0xFF) << 8
+             | (b[off + 6] & 0xFF) << 16 | b[off + 7] << 24;
+      c = TABLES[7 * 256 + (lo & 0xFF)] ^ TABLES[6 * 256 + ((lo >>> 8) & 0xFF)]
+        ^ TABLES[5 * 256 + ((lo >>> 16) & 0xFF)] ^ TABLES[4 * 256 + (lo >>> 24)]
+        ^ TABLES[3 * 256 + (hi & 0xFF)] ^ TABLES[2 * 256 + ((hi >>> 8) & 0xFF)]
+        ^ TABLES[256 + ((hi >>> 16) & 0xFF)] ^ TABLES[hi >>> 24];
+    }
+    for (; off < end; off++) {
+      c = (c >>> 8) ^ TABLES[(c ^ b[off]) & 0xFF];
+    }
+    crc = c;
+  }
+
+  @Override
+  public long getValue() {
+    return ~crc & 0xFFFFFFFFL;
+  }
+
+  @Override
+  public void reset() {
+    crc = ~0;
+  }
+}
@@ -1,11 +1,26 @@
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
 import java.io.File;
+import java.io.FileInputStream;
 import java.io.FileNotFoundException;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
 import java.io.PrintWriter;
+import java.io.Reader;
+import java.io.Writer;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
 import java.util.HashMap;
 import java.util.Map;
 import java.util.NoSuchElementException;
 import java.util.PriorityQueue;
 import java.util.Scanner;
+import java.util.concurrent.ForkJoinPool;
 
 public class Driver {
   
@@ -23,7 +38,9 @@ public class Driver {
   final static String MYSTERY_F = "mysteryPassage.txt";
 
   // Output file names. Changes not recommended.
-  final static String ENCODE_OUT_F = "encoded.txt";
+  // Encoded output is packed binary: a container with the tree (see
+  // CONTAINER_OUTPUT), or else an 8-byte bit count, then the bits.
+  final static String ENCODE_OUT_F = "encoded.bin";
   final static String DECODE_OUT_F = "decoded.txt";
   
   // Options for which kind of tree to use. DO NOT CHANGE.
@@ -50,6 +67,13 @@ public class Driver {
   final static String DECODE_F = MYSTERY_F;    // File to decode
   // (You may want DECODE_F = ENCODE_OUT_F to decode what was just encoded.)
   
+  /**
+   * Decode input format. CHANGE AS DESIRED.
+   * true:  DECODE_F is packed binary, as written to ENCODE_OUT_F
+   * false: DECODE_F is a text file of '0' and '1' chars
+   */
+  final static boolean DECODE_PACKED = false;
+  
   /**
    * Tree output format. CHANGE AS DESIRED.
    * true:  Display tree with all bits shown before each leaf
@@ -67,6 +91,123 @@ public class Driver {
    */
   final static boolean FILL_GAPS = true;
   
+  // Options for how files are read and written. DO NOT CHANGE.
+  // 0. Read whole files into memory with fileChars(), write with
+  //    writeFile() and writePacked().
+  // 1. Stream files a buffer at a time (see HuffmanStreams), so files
+  //    of any size fit in memory.
+  // 2. Memory-map files (see MappedHuffmanIO), best for large local files.
+  // 3. Stream files in one pass with adaptive codes (see AdaptiveHuffman),
+  //    which need no tree: the tree built is only displayed.
+  // In modes 1 to 3, ENCODE_OUT_F is written in frames, and DECODE_F
+  // must be in frames if DECODE_PACKED.
+  final static int IO_WHOLE_FILE = 0;
+  final static int IO_STREAM = 1;
+  final static int IO_MAPPED = 2;
+  final static int IO_ADAPTIVE = 3;
+  
+  // File handling selection. CHANGE AS DESIRED.
+  final static int IO_MODE = IO_WHOLE_FILE;
+  
+  /**
+   * Share of TREE_F read to build the tree in streamed and memory-mapped
+   * modes. CHANGE AS DESIRED. 1 counts every char; less counts only that
+   * share of the file's blocks (see MappedHuffmanIO.sampleTree()), at a
+   * small cost in encoded size estimated by printStats(). Chars the
+   * sample misses are encoded after an escape code.
+   */
+  final static double SAMPLE_FRACTION = 1;
+  
+  /**
+   * Sampled block selection. CHANGE AS DESIRED.
+   * true:  Blocks picked at random (the same ones every run)
+   * false: Evenly spaced blocks
+   */
+  final static boolean SAMPLE_RANDOM = false;
+  
+  /**
+   * Encoding option. CHANGE AS DESIRED.
+   * true:  Split whole files into blocks and encode them on all cores
+   *        (see BlockEncoder), for containers and plain bits; output is
+   *        the same
+   * false: Encode on one thread
+   */
+  final static boolean PARALLEL_ENCODE = false;
+  
+  /**
+   * Encoded file format for whole-file mode. CHANGE AS DESIRED.
+   * true:  ENCODE_OUT_F is a self-describing container (see
+   *        HuffmanContainer): the tree or the id of the standard or test
+   *        tree, the text length, and blocks with checksums. If
+   *        DECODE_PACKED, DECODE_F must be a container too, and is decoded
+   *        with its own tree whatever TREE_TYPE is
+   * false: ENCODE_OUT_F is as set by INDEXED_OUTPUT and
+   *        INTERLEAVED_STREAMS, and needs the same tree to decode
+   */
+  final static boolean CONTAINER_OUTPUT = true;
+  
+  /**
+   * Container trees, if CONTAINER_OUTPUT. CHANGE AS DESIRED.
+   * true:  Each block of ENCODE_F is coded with its own tree, built from
+   *        its chars with CONFIG, or stored as plain chars if no tree
+   *        would make it smaller (see HuffmanBlock), so no char is ever
+   *        skipped and the tree above is only displayed
+   * false: The whole file is coded with the tree above
+   */
+  final static boolean PER_BLOCK_TREES = false;
+  
+  /**
+   * Encoded file format for whole-file mode, if not CONTAINER_OUTPUT.
+   * CHANGE AS DESIRED.
+   * true:  ENCODE_OUT_F also records where every block of chars starts
+   *        (see IndexedEncoding), so it can be decoded in parallel or in
+   *        part, and DECODE_F must be indexed too if DECODE_PACKED
+   * false: ENCODE_OUT_F holds just the bit count and bits
+   */
+  final static boolean INDEXED_OUTPUT = false;
+  
+  /**
+   * Encoded streams for whole-file mode, if neither CONTAINER_OUTPUT nor
+   * INDEXED_OUTPUT. CHANGE AS DESIRED.
+   * 1:    ENCODE_OUT_F holds just the bit count and bits
+   * more: ENCODE_OUT_F holds that many interleaved streams (see
+   *       InterleavedEncoding), which decode several times faster on one
+   *       thread, and DECODE_F must be interleaved too if DECODE_PACKED
+   */
+  final static int INTERLEAVED_STREAMS = 1;
+  
+  /**
+   * Code assignment option. CHANGE AS DESIRED.
+   * true:  Trees built from text use canonical codes (Huffman code
+   *        lengths computed without building a tree, codes assigned in
+   *        length then char order), and are saved as just their code
+   *        lengths
+   * false: Codes follow the tree exactly as built, saved node by node
+   */
+  final static boolean CANONICAL_CODES = true;
+  
+  /**
+   * Longest code allowed in canonical trees built from text. CHANGE AS
+   * DESIRED. Shorter limits keep decode tables small at a (usually tiny)
+   * cost in encoded size, shown by printStats(). 0 for no limit.
+   */
+  final static int CODE_LENGTH_LIMIT = 15;
+  
+  /**
+   * Tree build options above, for trees built from text. DO NOT CHANGE.
+   */
+  final static HuffmanConfig CONFIG =
+      new HuffmanConfig(FILL_GAPS, CANONICAL_CODES, CODE_LENGTH_LIMIT);
+  
+  /**
+   * Alphabet option. CHANGE AS DESIRED.
+   * true:  Work on raw file bytes (see ByteHuffmanCodec): no charset
+   *        decoding or encoding, and binary files work too. The codec is
+   *        saved as code lengths, and DECODE_OUT_F is written byte for byte
+   * false: Work on the chars of text files
+   */
+  final static boolean BYTE_MODE = false;
+  
   /**
    * Displayed text size limit. CHANGE AS DESIRED.
    */
@@ -81,6 +222,11 @@ public class Driver {
    * Tree mode and file selection is specified by class constants.
    */
   public static void main(String[] args) {
+    if (BYTE_MODE) {
+      byteMain();
+      return;
+    }
+    
     //======================================\\
     // GENERATE TREE, STANDARD OR FROM FILE \\
     //======================================\\
@@ -93,7 +239,7 @@ public class Driver {
       System.err.println("Error: Invalid tree. Program aborted.");
       return;
     }
-    tree.display(); // (OPTIONAL) View generated tree.
+    tree.display(DISP_ALL_BITS); // (OPTIONAL) View generated tree.
     
     // Map each character in tree to corresponding bit String representation.
     //   This will be necessary for encoding characters into bits.
@@ -101,13 +247,21 @@ public class Driver {
     
     // (OPTIONAL) View bit String mappings.
     System.out.println(bitStrings);
+    // Trees with canonical codes are represented by code lengths, others
+    //   node by node with chars as wide as needed (any Unicode char).
+    boolean canonical = tree.isCanonical();
+    String treeRep = canonical ? tree.codeLengthRep() : tree.wideBitRep();
     if(TREE_TYPE != TREE_TYPE_STD) {
     	tree.printStats();
         System.out.println("This is the Bit Rep of the tree, it's kind of long...");
-        System.out.println(tree.bitRep());
+        System.out.println(treeRep);
+        if (canonical && !tree.hasEscape()) {
+          System.out.println("(Code lengths: " + treeRep.length() + " bits, vs "
+                           + tree.wideBitRep().length() + " bits node by node.)");
+        }
     }
     if(SAVE_TREE_SETTING) {
-    	writeFile("treeBitRep.txt", tree.bitRep());
+    	writeFile("treeBitRep.txt", treeRep);
     }
     // TODO (OPTIONAL): Convert tree ITSELF to bit String and display.
     
@@ -121,23 +275,72 @@ public class Driver {
     System.out.println("=============");
 
     System.out.println("Attempting to encode " + ENCODE_F);
-    char[] encodeFileChars = fileChars(ENCODE_F);
-    if (encodeFileChars == null) {
+    char[] encodeFileChars = IO_MODE == IO_WHOLE_FILE ? fileChars(ENCODE_F) : null;
+    if (IO_MODE != IO_WHOLE_FILE) {
+      streamEncode(tree, ENCODE_F, ENCODE_OUT_F);
+    }
+    else if (encodeFileChars == null) {
       System.err.println("Warning: Could not read file to encode: " + ENCODE_F);
     }
     else {
-      String encodedText = encode(bitStrings, encodeFileChars);
-      System.out.println("Encoded Text Length: " + encodedText.length());
-      if (encodedText.length() < DISPLAY_LIMIT) {
-        System.out.println("Encoded text:");
-        System.out.println(encodedText);
+      // The text is encoded once, straight into the format written.
+      ForkJoinPool pool = PARALLEL_ENCODE ? ForkJoinPool.commonPool() : null;
+      boolean written = false;
+      try {
+        if (CONTAINER_OUTPUT) {
+          byte[] container = encodeContainer(tree, encodeFileChars, pool);
+          System.out.println("Encoded Container Length: " + container.length + " bytes");
+          writeContainer(ENCODE_OUT_F, container);
+          written = true;
+        }
+        else if (INDEXED_OUTPUT) {
+          IndexedEncoding indexed = IndexedEncoding.encode(
+              tree.codebook(), encodeFileChars, IndexedEncoding.BLOCK_CHARS);
+          System.out.println("Encoded Bit Length: " + indexed.bitLength()
+                           + " (" + indexed.blocks() + " blocks)");
+          writeIndexed(ENCODE_OUT_F, indexed);
+          written = true;
+        }
+        else if (INTERLEAVED_STREAMS > 1) {
+          InterleavedEncoding interleaved = InterleavedEncoding.encode(
+              tree.codebook(), encodeFileChars, INTERLEAVED_STREAMS);
+          System.out.println("Encoded Bit Length: " + interleaved.bitLength()
+                           + " (" + interleaved.streams() + " streams)");
+          writeInterleaved(ENCODE_OUT_F, interleaved);
+          written = true;
+        }
       }
-      else {
-        System.out.println("Encoded text too long to display, see file.");
+      catch (IllegalArgumentException iae) {
+        System.err.println("Warning: Codes too long for this format, writing bits only.");
       }
       
-      writeFile(ENCODE_OUT_F, encodedText);
-      System.out.println("Encoded text written to " + ENCODE_OUT_F);
+      if (!written) {
+        BitWriter encodedBits;
+        try {
+          if (pool != null) {
+            encodedBits = BlockEncoder.encode(tree.codebook(), encodeFileChars,
+                                              BlockEncoder.BLOCK_CHARS, pool);
+          }
+          else {
+            encodedBits = encode(tree.codebook(), encodeFileChars);
+          }
+        }
+        catch (IllegalArgumentException iae) {
+          // Codes too long for ints; the bit Strings still work.
+          encodedBits = encode(bitStrings, encodeFileChars);
+        }
+        System.out.println("Encoded Bit Length: " + encodedBits.bitLength()
+                         + " (" + (encodedBits.bitLength() + 7) / 8 + " bytes)");
+        if (encodedBits.bitLength() < DISPLAY_LIMIT) {
+          System.out.println("Encoded text:");
+          System.out.println(encodedBits);
+        }
+        else {
+          System.out.println("Encoded text too long to display, see file.");
+        }
+        writePacked(ENCODE_OUT_F, encodedBits);
+      }
+      System.out.println("Encoded bits written to " + ENCODE_OUT_F);
     }
     
     //======================\\
@@ -149,12 +352,78 @@ public class Driver {
     System.out.println("=============");
     
     System.out.println("Attempting to decode " + DECODE_F);
-    char[] decodeFileChars = fileChars(DECODE_F);
-    if (decodeFileChars == null) {
+    BitReader decodeBits = null;
+    if (IO_MODE != IO_WHOLE_FILE && DECODE_PACKED) {
+      streamDecode(tree, DECODE_F, DECODE_OUT_F);
+      return;
+    }
+    else if (DECODE_PACKED && CONTAINER_OUTPUT) {
+      char[] decodedChars = readContainer(DECODE_F);
+      if (decodedChars == null) {
+        return;
+      }
+      String decodedText = new String(decodedChars);
+      System.out.println("Decoded Text Length: " + decodedText.length());
+      if (decodedText.length() < DISPLAY_LIMIT) {
+        System.out.println("Decoded text:");
+        System.out.println(decodedText);
+      }
+      else {
+        System.out.println("Decoded text too long to display, see file.");
+      }
+      writeFile(DECODE_OUT_F, decodedText);
+      System.out.println("Decoded text written to " + DECODE_OUT_F);
+      return;
+    }
+    else if (DECODE_PACKED && INDEXED_OUTPUT) {
+      IndexedEncoding indexed = readIndexed(DECODE_F);
+      if (indexed == null) {
+        System.err.println("Warning: Could not read file to decode: " + DECODE_F);
+        return;
+      }
+      // Blocks decode independently, so spread them over all cores.
+      String decodedText = new String(indexed.decodeAll(tree.decoder(),
+                                                        ForkJoinPool.commonPool()));
+      System.out.println("Decoded Text Length: " + decodedText.length()
+                       + " (" + indexed.blocks() + " blocks)");
+      writeFile(DECODE_OUT_F, decodedText);
+      System.out.println("Decoded text written to " + DECODE_OUT_F);
+      return;
+    }
+    else if (DECODE_PACKED && INTERLEAVED_STREAMS > 1) {
+      InterleavedEncoding interleaved = readInterleaved(DECODE_F);
+      if (interleaved == null) {
+        System.err.println("Warning: Could not read file to decode: " + DECODE_F);
+        return;
+      }
+      String decodedText;
+      try {
+        decodedText = new String(interleaved.decode(tree.decoder()));
+      }
+      catch (IllegalStateException ise) {
+        System.err.println("Warning: Could not decode " + DECODE_F + ": " + ise.getMessage());
+        return;
+      }
+      System.out.println("Decoded Text Length: " + decodedText.length()
+                       + " (" + interleaved.streams() + " streams)");
+      writeFile(DECODE_OUT_F, decodedText);
+      System.out.println("Decoded text written to " + DECODE_OUT_F);
+      return;
+    }
+    else if (DECODE_PACKED) {
+      decodeBits = readPacked(DECODE_F);
+    }
+    else {
+      char[] decodeFileChars = fileChars(DECODE_F);
+      if (decodeFileChars != null) {
+        decodeBits = BitReader.fromBitChars(decodeFileChars);
+      }
+    }
+    if (decodeBits == null) {
       System.err.println("Warning: Could not read file to decode: " + DECODE_F);
     }
     else {
-      String decodedText = tree.decode(decodeFileChars);
+      String decodedText = tree.decode(decodeBits);
       System.out.println("Decoded Text Length: " + decodedText.length());
       if (decodedText.length() < DISPLAY_LIMIT) {
         System.out.println("Decoded text:");
@@ -173,6 +442,83 @@ public class Driver {
     
   }
   
+  /**
+   * Driver method for BYTE_MODE: builds a byte codec from TREE_F, then
+   * encodes ENCODE_F and decodes DECODE_F byte for byte. Tree types
+   * other than from text are not available, since the standard and test
+   * trees are char trees.
+   */
+  static void byteMain() {
+    System.out.println("================");
+    System.out.println("GENERATING CODEC");
+    System.out.println("================");
+    
+    System.out.println("Using bytes of " + TREE_F + " for codec generation.");
+    byte[] treeGenBytes = fileBytes(TREE_F);
+    if (treeGenBytes == null) {
+      System.err.println("Error: Could not read file for codec generation. Program aborted.");
+      return;
+    }
+    ByteHuffmanCodec codec = ByteHuffmanCodec.build(ByteBuffer.wrap(treeGenBytes),
+                                                    CODE_LENGTH_LIMIT);
+    BitWriter header = new BitWriter();
+    codec.writeLengths(header);
+    System.out.println("Code lengths: " + header.bitLength() + " bits");
+    if (SAVE_TREE_SETTING) {
+      writeFile("treeBitRep.txt", header.toString());
+    }
+    
+    System.out.println();
+    System.out.println("=============");
+    System.out.println("ENCODING FILE");
+    System.out.println("=============");
+    
+    System.out.println("Attempting to encode " + ENCODE_F);
+    byte[] encodeFileBytes = fileBytes(ENCODE_F);
+    if (encodeFileBytes == null) {
+      System.err.println("Warning: Could not read file to encode: " + ENCODE_F);
+    }
+    else {
+      BitWriter encodedBits = codec.encode(encodeFileBytes);
+      System.out.println("Encoded " + encodeFileBytes.length + " bytes to "
+                       + (encodedBits.bitLength() + 7) / 8 + " bytes");
+      writePacked(ENCODE_OUT_F, encodedBits);
+      System.out.println("Encoded bits written to " + ENCODE_OUT_F);
+    }
+    
+    System.out.println();
+    System.out.println("=============");
+    System.out.println("DECODING FILE");
+    System.out.println("=============");
+    
+    System.out.println("Attempting to decode " + DECODE_F);
+    BitReader decodeBits = null;
+    if (DECODE_PACKED) {
+      decodeBits = readPacked(DECODE_F);
+    }
+    else {
+      char[] decodeFileChars = fileChars(DECODE_F);
+      if (decodeFileChars != null) {
+        decodeBits = BitReader.fromBitChars(decodeFileChars);
+      }
+    }
+    if (decodeBits == null) {
+      System.err.println("Warning: Could not read file to decode: " + DECODE_F);
+      return;
+    }
+    try {
+      byte[] decodedBytes = codec.decode(decodeBits);
+      Files.write(new File(DECODE_OUT_F).toPath(), decodedBytes);
+      System.out.println("Decoded " + decodedBytes.length + " bytes to " + DECODE_OUT_F);
+    }
+    catch (IllegalStateException ise) {
+      System.err.println("Warning: Could not decode " + DECODE_F + ": " + ise.getMessage());
+    }
+    catch (IOException ioe) {
+      System.err.println("Warning: Could not write to file: " + DECODE_OUT_F);
+    }
+  }
+  
   static HuffmanTree makeTree() {
     if (TREE_TYPE == TREE_TYPE_STD) {
       System.out.println("Using standard tree.");
@@ -185,6 +531,23 @@ public class Driver {
     
     // Attempt to read characters of the file selected for tree generation.
     System.out.println("Using " + TREE_F + " for tree generation.");
+    if (IO_MODE != IO_WHOLE_FILE) {
+      try {
+        if (SAMPLE_FRACTION < 1) {
+          return MappedHuffmanIO.sampleTree(new File(TREE_F), SAMPLE_FRACTION, SAMPLE_RANDOM,
+                                            CONFIG);
+        }
+        if (IO_MODE == IO_MAPPED) {
+          return MappedHuffmanIO.buildTree(new File(TREE_F), CONFIG);
+        }
+        return HuffmanStreams.buildTree(new File(TREE_F), CONFIG);
+      }
+      catch (IOException ioe) {
+        System.err.println("Warning: Could not read file for tree generation. "
+                         + "Using standard tree.");
+        return HuffmanTree.stdTree();
+      }
+    }
     char[] treeGenChars = fileChars(TREE_F);
     if (treeGenChars == null) {
       // Fall back on "standard tree" if necessary.
@@ -195,7 +558,7 @@ public class Driver {
     }
     
     // Generate tree from text file.
-    HuffmanTree tree = new HuffmanTree(treeGenChars);
+    HuffmanTree tree = new HuffmanTree(treeGenChars, CONFIG);
     if (!tree.isValid()) {
       System.err.println("Warning: Failed to generate tree from file. Using standard tree.");
       return HuffmanTree.stdTree();
@@ -205,7 +568,7 @@ public class Driver {
   }
   
   /**
-   * Encodes text to bit String using provided mapping (most likely generated
+   * Encodes text to packed bits using provided mapping (most likely generated
    * by traversing Huffman Tree, one mapping per leaf). Ignores/skips any
    * chars absent from map.
    * 
@@ -213,22 +576,111 @@ public class Driver {
    * @param text       text to encode.
    * @return           the encoded version of the text
    */
-  static String encode(Map<Character,String> bitStrings, char[] text) {
-    StringBuilder output = new StringBuilder();
+  static BitWriter encode(Map<Character,String> bitStrings, char[] text) {
+    Object event = HuffmanEvents.SINK.begin(HuffmanEvents.ENCODE);
+    BitWriter output = new BitWriter(text.length / 2 + 1);
     
     for(char c: text) {
     	String encodedChar = bitStrings.get(c);
     	if(encodedChar != null) {
-    		output.append(encodedChar);
+    		output.writeBits(encodedChar);
     	}
     }
     
-    // TODO: encode the text using the bitStrings given
+    HuffmanEvents.SINK.commit(event, text.length, output.bitLength());
+    return output;
+  }
+
+  
+  /**
+   * Encodes text to packed bits using a codebook of int codes, without
+   * any String per char. Ignores/skips any chars absent from codebook.
+   * 
+   * @param codes code for each character.
+   * @param text  text to encode.
+   * @return      the encoded version of the text
+   */
+  static BitWriter encode(HuffmanCodebook codes, char[] text) {
+    Object event = HuffmanEvents.SINK.begin(HuffmanEvents.ENCODE);
+    BitWriter output = new BitWriter(text.length / 2 + 1);
+    
+    for (char c : text) {
+      int len = codes.length(c);
+      if (len > 0) {
+        output.writeBits(codes.code(c), len);
+      }
+    }
     
-    return output.toString();
+    HuffmanEvents.SINK.commit(event, text.length, output.bitLength());
+    return output;
   }
 
+  /**
+   * Encodes a file of any size to frames of packed bits, a buffer at a
+   * time, streamed, memory-mapped or adaptive according to IO_MODE.
+   * Ignores/skips any chars absent from the tree, except in adaptive mode.
+   * 
+   * @param tree        tree to encode with.
+   * @param inFileName  text file to encode.
+   * @param outFileName file to write frames to.
+   */
+  static void streamEncode(HuffmanTree tree, String inFileName, String outFileName) {
+    if (IO_MODE == IO_MAPPED) {
+      try {
+        long chars = MappedHuffmanIO.encode(tree.codebook(), new File(inFileName),
+                                            new File(outFileName));
+        System.out.println("Encoded " + chars + " chars to " + outFileName);
+      }
+      catch (IOException ioe) {
+        System.err.println("Warning: Could not map " + inFileName + " to "
+                         + outFileName + ": " + ioe.getMessage());
+      }
+      return;
+    }
+    try (Reader in = new InputStreamReader(new FileInputStream(inFileName),
+                                           HuffmanStreams.CHARSET);
+         OutputStream out = new BufferedOutputStream(new FileOutputStream(outFileName))) {
+      long chars = IO_MODE == IO_ADAPTIVE
+          ? AdaptiveHuffman.encode(in, out)
+          : HuffmanStreams.encode(tree.codebook(), in, out);
+      System.out.println("Encoded " + chars + " chars to " + outFileName);
+    }
+    catch (IOException ioe) {
+      System.err.println("Warning: Could not stream " + inFileName + " to "
+                       + outFileName + ": " + ioe.getMessage());
+    }
+  }
   
+  /**
+   * Decodes a file of frames written by streamEncode(), a buffer at a
+   * time, streamed, memory-mapped or adaptive according to IO_MODE.
+   * 
+   * @param tree        tree the file was encoded with (unused if adaptive).
+   * @param inFileName  file of frames to decode.
+   * @param outFileName text file to write.
+   */
+  static void streamDecode(HuffmanTree tree, String inFileName, String outFileName) {
+    try (InputStream in = new BufferedInputStream(new FileInputStream(inFileName));
+         Writer out = new OutputStreamWriter(new FileOutputStream(outFileName),
+                                             HuffmanStreams.CHARSET)) {
+      long chars;
+      if (IO_MODE == IO_MAPPED) {
+        chars = MappedHuffmanIO.decode(tree, new File(inFileName), out);
+      }
+      else if (IO_MODE == IO_ADAPTIVE) {
+        chars = AdaptiveHuffman.decode(in, out);
+      }
+      else {
+        chars = HuffmanStreams.decode(tree, in, out);
+      }
+      System.out.println("Decoded " + chars + " chars to " + outFileName);
+    }
+    catch (IOException ioe) {
+      System.err.println("Warning: Could not stream " + inFileName + " to "
+                       + outFileName + ": " + ioe.getMessage());
+    }
+  }
+
   //=============================\\
   // FILE INPUT / OUTPUT METHODS \\
   //=============================\\
@@ -270,6 +722,22 @@ public class Driver {
     return chars;
   }
   
+  /**
+   * Reads in entire file from project base directory, as raw bytes.
+   * 
+   * @param fileName name of file to read.
+   * @return         bytes of the file,
+   *                 or null if file could not be read.
+   */
+  static byte[] fileBytes(String fileName) {
+    try {
+      return Files.readAllBytes(new File(fileName).toPath());
+    }
+    catch (IOException ioe) {
+      return null;
+    }
+  }
+  
   /**
    * Writes provided String to any file in project base directory.
    * 
@@ -288,5 +756,190 @@ public class Driver {
       System.err.println("Warning: Could not write to file: " + fileName);
     }
   }
+  
+  /**
+   * Writes packed bits to any file in project base directory. The file
+   * holds the bit count (8 bytes) followed by the packed bytes, so the
+   * padding at the end of the last byte is not decoded.
+   * 
+   * @param fileName file to write to.
+   * @param bits     bits to put in file.
+   */
+  static void writePacked(String fileName, BitWriter bits) {
+    try (DataOutputStream out = new DataOutputStream(
+        new FileOutputStream(fileName))) {
+      out.writeLong(bits.bitLength());
+      out.write(bits.toByteArray());
+    }
+    catch (IOException ioe) {
+      System.err.println("Warning: Could not write to file: " + fileName);
+    }
+  }
+  
+  /**
+   * Encodes text as a container (see HuffmanContainer). Chars absent from
+   * the tree are skipped, as by encode(), so the container holds exactly
+   * the chars encoded; the text is only copied if there are any. The
+   * standard and test trees are stored as just their ids (and any other
+   * tree in full, even if makeTree() fell back on the standard tree).
+   * With PER_BLOCK_TREES, each block has its own tree instead, and every
+   * char is kept.
+   * 
+   * @param tree tree to encode with.
+   * @param text text to encode.
+   * @param pool threads to encode blocks on, or null for this thread.
+   * @return     the container.
+   * @throws IllegalArgumentException if the tree's codes are too long
+   *         for a container
+   */
+  static byte[] encodeContainer(HuffmanTree tree, char[] text, ForkJoinPool pool) {
+    if (PER_BLOCK_TREES) {
+      return HuffmanContainer.encodeBlockTrees(text, CONFIG, HuffmanContainer.BLOCK_CHARS,
+                                               pool);
+    }
+    int builtInTree = TREE_TYPE == TREE_TYPE_STD ? HuffmanContainer.STD_TREE
+                    : TREE_TYPE == TREE_TYPE_TEST ? HuffmanContainer.TEST_TREE
+                    : 0;
+    HuffmanCodebook codes = tree.codebook();
+    int n = 0;
+    for (char c : text) {
+      if (codes.length(c) > 0) n++;
+    }
+    char[] kept = text;
+    if (n < text.length) {
+      kept = new char[n];
+      n = 0;
+      for (char c : text) {
+        if (codes.length(c) > 0) kept[n++] = c;
+      }
+    }
+    return HuffmanContainer.encode(kept, tree, builtInTree, HuffmanContainer.BLOCK_CHARS, pool);
+  }
+  
+  /**
+   * Writes a container to any file in project base directory.
+   * 
+   * @param fileName  file to write to.
+   * @param container container to put in file, from encodeContainer().
+   */
+  static void writeContainer(String fileName, byte[] container) {
+    try {
+      Files.write(new File(fileName).toPath(), container);
+    }
+    catch (IOException ioe) {
+      System.err.println("Warning: Could not write to file: " + fileName);
+    }
+  }
+  
+  /**
+   * Reads and decodes a container written by writeContainer(), with the
+   * tree it names or holds. Prints a warning if it cannot.
+   * 
+   * @param fileName name of file to read.
+   * @return         the decoded text,
+   *                 or null if file could not be read or decoded.
+   */
+  static char[] readContainer(String fileName) {
+    ByteBuffer container;
+    try {
+      container = ByteBuffer.wrap(Files.readAllBytes(new File(fileName).toPath()));
+    }
+    catch (IOException ioe) {
+      System.err.println("Warning: Could not read file to decode: " + fileName);
+      return null;
+    }
+    try {
+      return HuffmanContainer.decode(container);
+    }
+    catch (IllegalArgumentException | IllegalStateException e) {
+      System.err.println("Warning: Could not decode " + fileName + ": " + e.getMessage());
+      return null;
+    }
+  }
+  
+  /**
+   * Writes encoded bits along with their block index to any file in
+   * project base directory.
+   * 
+   * @param fileName file to write to.
+   * @param indexed  bits and index to put in file.
+   */
+  static void writeIndexed(String fileName, IndexedEncoding indexed) {
+    try (OutputStream out = new BufferedOutputStream(new FileOutputStream(fileName))) {
+      indexed.writeTo(out);
+    }
+    catch (IOException ioe) {
+      System.err.println("Warning: Could not write to file: " + fileName);
+    }
+  }
+  
+  /**
+   * Reads encoded bits and their block index written by writeIndexed().
+   * 
+   * @param fileName name of file to read.
+   * @return         the bits and index,
+   *                 or null if file could not be read.
+   */
+  static IndexedEncoding readIndexed(String fileName) {
+    try {
+      return IndexedEncoding.readFrom(
+          ByteBuffer.wrap(Files.readAllBytes(new File(fileName).toPath())));
+    }
+    catch (IOException | IllegalArgumentException e) {
+      return null;
+    }
+  }
+  
+  /**
+   * Writes encoded bits split into interleaved streams to any file in
+   * project base directory.
+   * 
+   * @param fileName    file to write to.
+   * @param interleaved streams to put in file.
+   */
+  static void writeInterleaved(String fileName, InterleavedEncoding interleaved) {
+    try (OutputStream out = new BufferedOutputStream(new FileOutputStream(fileName))) {
+      interleaved.writeTo(out);
+    }
+    catch (IOException ioe) {
+      System.err.println("Warning: Could not write to file: " + fileName);
+    }
+  }
+  
+  /**
+   * Reads interleaved streams written by writeInterleaved().
+   * 
+   * @param fileName name of file to read.
+   * @return         the streams,
+   *                 or null if file could not be read.
+   */
+  static InterleavedEncoding readInterleaved(String fileName) {
+    try {
+      return InterleavedEncoding.readFrom(
+          ByteBuffer.wrap(Files.readAllBytes(new File(fileName).toPath())));
+    }
+    catch (IOException | IllegalArgumentException e) {
+      return null;
+    }
+  }
+  
+  /**
+   * Reads packed bits written by writePacked().
+   * 
+   * @param fileName name of file to read.
+   * @return         reader over the file's bits,
+   *                 or null if file could not be read.
+   */
+  static BitReader readPacked(String fileName) {
+    try {
+      ByteBuffer buf = ByteBuffer.wrap(Files.readAllBytes(new File(fileName).toPath()));
+      long bitLength = buf.getLong();
+      return new BitReader(buf, bitLength);
+    }
+    catch (IOException | RuntimeException e) {
+      // Missing file, truncated header, or bit count larger than the file.
+      return null;
+    }
+  }
 
 }
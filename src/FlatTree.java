@@ -0,0 +1,553 @@
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.NoSuchElementException;
+
+/**
+ * Huffman Tree stored as flat arrays rather than linked node objects.
+ * Each parent is an index into two parallel child arrays, and each leaf is
+ * an index into an array of chars, so a tree of n chars takes about
+ * 12n bytes in three objects, and walks touch contiguous memory. A leaf
+ * may also hold HuffmanCodebook.ESCAPE, which is not a char.
+ *
+ * A child reference is either a parent index (>= 0) or the complement of
+ * a leaf index (< 0, so ~ref is the leaf). The root is parent 0, except
+ * in a tree of one lone leaf, which has no parents. Every parent has a
+ * lower index than its children, so parents can be visited bottom-up by
+ * walking the indexes backwards.
+ *
+ * HuffmanNode objects are only built on request, as a view (see
+ * toNodes()).
+ */
+class FlatTree {
+  /**
+   * Child reference for "no child yet", while building. Never valid
+   * once built, since the root is nobody's child.
+   */
+  private final static int NONE = 0;
+
+  /**
+   * Bits per char in the original node-by-node format.
+   */
+  final static int ASCII_BITS = 8;
+
+  /**
+   * Bits of the char width header of the wide node-by-node format.
+   */
+  private final static int WIDTH_BITS = 4;
+
+  /**
+   * Zero child of each parent.
+   */
+  private int[] zero;
+  /**
+   * One child of each parent.
+   */
+  private int[] one;
+  /**
+   * Char (or ESCAPE) of each leaf.
+   */
+  private int[] symbols;
+  /**
+   * Number of parents, and used length of zero and one.
+   */
+  private int parents = 0;
+  /**
+   * Number of leaves, and used length of symbols.
+   */
+  private int leaves = 0;
+  /**
+   * Height of each parent. Built on first use.
+   */
+  private int[] heights;
+  /**
+   * Number of leaves under each parent. Built on first use.
+   */
+  private int[] leafCounts;
+
+  /**
+   * Constructs an empty tree, to be filled in by a static factory.
+   *
+   * @param chars expected number of chars, to size the arrays.
+   */
+  private FlatTree(int chars) {
+    int n = Math.max(1, chars);
+    zero = new int[n];
+    one = new int[n];
+    symbols = new int[n];
+  }
+
+  /**
+   * @return reference to the root: parent 0, or leaf 0 for a lone leaf.
+   */
+  int root() {
+    return parents > 0 ? 0 : ~0;
+  }
+
+  /**
+   * @param parent parent index.
+   * @return       reference to the parent's zero child.
+   */
+  int zero(int parent) {
+    return zero[parent];
+  }
+
+  /**
+   * @param parent parent index.
+   * @return       reference to the parent's one child.
+   */
+  int one(int parent) {
+    return one[parent];
+  }
+
+  /**
+   * @param leaf leaf index.
+   * @return     char of that leaf, or HuffmanCodebook.ESCAPE.
+   */
+  int symbol(int leaf) {
+    return symbols[leaf];
+  }
+
+  /**
+   * @return number of leaves (chars) in this tree.
+   */
+  int leaves() {
+    return leaves;
+  }
+
+  /**
+   * @param ref child reference.
+   * @return    length of the longest path from ref down to a leaf.
+   */
+  int height(int ref) {
+    if (ref < 0) return 0;
+    if (heights == null) {
+      int[] h = new int[parents];
+      // Children have higher indexes, so are done first.
+      for (int p = parents - 1; p >= 0; p--) {
+        int z = zero[p] < 0 ? 0 : h[zero[p]];
+        int o = one[p] < 0 ? 0 : h[one[p]];
+        h[p] = 1 + Math.max(z, o);
+      }
+      heights = h;
+    }
+    return heights[ref];
+  }
+
+  /**
+   * @param ref child reference.
+   * @return    number of leaves under ref (1 for a leaf).
+   */
+  int leaves(int ref) {
+    if (ref < 0) return 1;
+    if (leafCounts == null) {
+      int[] n = new int[parents];
+      // Children have higher indexes, so are done first.
+      for (int p = parents - 1; p >= 0; p--) {
+        n[p] = (zero[p] < 0 ? 1 : n[zero[p]]) + (one[p] < 0 ? 1 : n[one[p]]);
+      }
+      leafCounts = n;
+    }
+    return leafCounts[ref];
+  }
+
+  //================\\
+  // BUILDING TREES \\
+  //================\\
+
+  /**
+   * Adds a parent with no children yet.
+   *
+   * @return index of the new parent.
+   */
+  private int addParent() {
+    if (parents == zero.length) {
+      zero = Arrays.copyOf(zero, parents * 2);
+      one = Arrays.copyOf(one, parents * 2);
+    }
+    zero[parents] = NONE;
+    one[parents] = NONE;
+    return parents++;
+  }
+
+  /**
+   * Adds a leaf.
+   *
+   * @param c char of the leaf, or HuffmanCodebook.ESCAPE.
+   * @return  reference to the new leaf.
+   */
+  private int addLeaf(int c) {
+    if (leaves == symbols.length) {
+      symbols = Arrays.copyOf(symbols, leaves * 2);
+    }
+    symbols[leaves] = c;
+    return ~leaves++;
+  }
+
+  /**
+   * Sets one child of a parent, or does nothing for the root's slot.
+   *
+   * @param slot parent index * 2 + which child (0 or 1), or -1 for root.
+   * @param ref  reference to the child.
+   */
+  private void setChild(int slot, int ref) {
+    if (slot < 0) return;
+    if ((slot & 1) == 0) {
+      zero[slot >> 1] = ref;
+    }
+    else {
+      one[slot >> 1] = ref;
+    }
+  }
+
+  /**
+   * Trims the arrays to their used lengths.
+   *
+   * @return this tree
+   */
+  private FlatTree trim() {
+    zero = Arrays.copyOf(zero, parents);
+    one = Arrays.copyOf(one, parents);
+    symbols = Arrays.copyOf(symbols, leaves);
+    return this;
+  }
+
+  /**
+   * Copies a tree of nodes, for instance one built by mapToTree().
+   *
+   * @param root root of the nodes to copy.
+   * @return     the same tree, as arrays.
+   */
+  static FlatTree fromNodes(HuffmanNode root) {
+    FlatTree tree = new FlatTree(16);
+    HuffmanNode[] nodes = new HuffmanNode[16];
+    int[] slots = new int[16];
+    nodes[0] = root;
+    slots[0] = -1;
+    int top = 1;
+    while (top > 0) {
+      top--;
+      HuffmanNode node = nodes[top];
+      int slot = slots[top];
+      nodes[top] = null;
+      if (node instanceof HuffmanParent) {
+        int p = tree.addParent();
+        tree.setChild(slot, p);
+        if (top + 2 > nodes.length) {
+          nodes = Arrays.copyOf(nodes, nodes.length * 2);
+          slots = Arrays.copyOf(slots, slots.length * 2);
+        }
+        // One child pushed first so the zero child is visited first.
+        nodes[top] = ((HuffmanParent) node).oneChild;
+        slots[top++] = p * 2 + 1;
+        nodes[top] = ((HuffmanParent) node).zeroChild;
+        slots[top++] = p * 2;
+      }
+      else {
+        Character c = ((HuffmanLeaf) node).c;
+        tree.setChild(slot, tree.addLeaf(c != null ? c : HuffmanCodebook.ESCAPE));
+      }
+    }
+    return tree.trim();
+  }
+
+  /**
+   * Builds the tree of a codebook's codes, for instance a canonical one
+   * read from a code length header.
+   *
+   * @param book codebook with at least 2 codes.
+   * @return     tree with exactly those codes.
+   * @throws IllegalArgumentException if codes do not form a full tree
+   */
+  static FlatTree fromCodebook(HuffmanCodebook book) {
+    FlatTree tree = new FlatTree(book.count());
+    tree.addParent();
+    for (int c : book.codeOrder()) {
+      int len = book.length(c);
+      int code = book.code(c);
+      int p = 0;
+      for (int depth = 0; depth < len; depth++) {
+        int bit = (code >>> (len - 1 - depth)) & 1;
+        int child = bit == 0 ? tree.zero[p] : tree.one[p];
+        if (depth == len - 1) {
+          if (child != NONE) {
+            throw new IllegalArgumentException("Codes do not form a full tree.");
+          }
+          tree.setChild(p * 2 + bit, tree.addLeaf(c));
+        }
+        else if (child == NONE) {
+          int q = tree.addParent();
+          tree.setChild(p * 2 + bit, q);
+          p = q;
+        }
+        else if (child < 0) {
+          throw new IllegalArgumentException("Codes do not form a full tree.");
+        }
+        else {
+          p = child;
+        }
+      }
+    }
+    for (int p = 0; p < tree.parents; p++) {
+      if (tree.zero[p] == NONE || tree.one[p] == NONE) {
+        throw new IllegalArgumentException("Codes do not form a full tree.");
+      }
+    }
+    return tree.trim();
+  }
+
+  //=================\\
+  // TREE BIT FORMAT \\
+  //=================\\
+
+  /**
+   * Reads a tree written node by node, in pre-order, as by
+   * writeBitRep(): 0 for a parent (followed by its children), or 1 for
+   * a leaf followed by its 8-bit char.
+   *
+   * @param bits the tree bits, advanced past the tree.
+   * @return     the tree read.
+   * @throws NoSuchElementException if bits run out partway through
+   */
+  static FlatTree readBitRep(BitReader bits) {
+    return readNodes(bits, ASCII_BITS);
+  }
+
+  /**
+   * Reads a tree written by writeWideBitRep().
+   *
+   * @param bits the tree bits, advanced past the tree.
+   * @return     the tree read.
+   * @throws NoSuchElementException if bits run out partway through
+   */
+  static FlatTree readWideBitRep(BitReader bits) {
+    return readNodes(bits, bits.readBits(WIDTH_BITS) + 1);
+  }
+
+  /**
+   * Reads a tree's nodes in pre-order, with chars of a given width.
+   *
+   * @param bits  the tree bits, advanced past the tree.
+   * @param width bits per char.
+   * @return      the tree read.
+   * @throws NoSuchElementException if bits run out partway through
+   */
+  private static FlatTree readNodes(BitReader bits, int width) {
+    FlatTree tree = new FlatTree(128);
+    // Slots still to fill, the next on top.
+    int[] slots = new int[16];
+    slots[0] = -1;
+    int top = 1;
+    while (top > 0) {
+      int slot = slots[--top];
+      if (bits.readBit() == 0) {
+        int p = tree.addParent();
+        tree.setChild(slot, p);
+        if (top + 2 > slots.length) {
+          slots = Arrays.copyOf(slots, slots.length * 2);
+        }
+        slots[top++] = p * 2 + 1;
+        slots[top++] = p * 2;
+      }
+      else {
+        tree.setChild(slot, tree.addLeaf(bits.readBits(width)));
+      }
+    }
+    return tree.trim();
+  }
+
+  /**
+   * @return bits needed to write the largest char in this tree.
+   */
+  int symbolWidth() {
+    int max = 0;
+    for (int i = 0; i < leaves; i++) {
+      max = Math.max(max, symbols[i]);
+    }
+    return Math.max(1, 32 - Integer.numberOfLeadingZeros(max));
+  }
+
+  /**
+   * Writes this tree node by node, in pre-order: 0 for a parent, or 1
+   * for a leaf followed by its 8-bit char.
+   *
+   * @param sb bit String to append to.
+   * @throws IllegalStateException if a char does not fit in 8 bits; use
+   *         writeWideBitRep() for those
+   */
+  void writeBitRep(StringBuilder sb) {
+    if (symbolWidth() > ASCII_BITS) {
+      throw new IllegalStateException("Tree has chars wider than "
+          + ASCII_BITS + " bits.");
+    }
+    writeNodes(sb, ASCII_BITS);
+  }
+
+  /**
+   * Writes this tree node by node like writeBitRep(), but with chars only
+   * as wide as the largest one needs, so any char can be written:
+   *    4 bits:    width W of each char, minus 1
+   *    then each node in pre-order: 0 for a parent, or 1 for a leaf
+   *    followed by its char in W bits
+   *
+   * @param sb bit String to append to.
+   * @throws IllegalStateException if the tree has an escape code, which
+   *         is not a char; such trees are saved as code lengths
+   */
+  void writeWideBitRep(StringBuilder sb) {
+    int width = symbolWidth();
+    if (width > 1 << WIDTH_BITS) {
+      throw new IllegalStateException("Tree has an escape code.");
+    }
+    appendBits(sb, width - 1, WIDTH_BITS);
+    writeNodes(sb, width);
+  }
+
+  /**
+   * Writes this tree's nodes in pre-order, with chars of a given width.
+   *
+   * @param sb    bit String to append to.
+   * @param width bits per char; wide enough for every char.
+   */
+  private void writeNodes(StringBuilder sb, int width) {
+    // Children still to write, the next on top.
+    int[] pending = new int[Math.max(1, height(root()) + 1)];
+    pending[0] = root();
+    int top = 1;
+    while (top > 0) {
+      int ref = pending[--top];
+      if (ref >= 0) {
+        sb.append('0');
+        pending[top++] = one[ref];
+        pending[top++] = zero[ref];
+      }
+      else {
+        sb.append('1');
+        appendBits(sb, symbols[~ref], width);
+      }
+    }
+  }
+
+  /**
+   * @param sb    bit String to append to.
+   * @param value bits to append, right-aligned.
+   * @param count number of bits to append, first bit most significant.
+   */
+  private static void appendBits(StringBuilder sb, int value, int count) {
+    for (int i = count - 1; i >= 0; i--) {
+      sb.append((char) ('0' + ((value >>> i) & 1)));
+    }
+  }
+
+  //=================\\
+  // CODES FROM TREE \\
+  //=================\\
+
+  /**
+   * Lists the code of every leaf as a bit String. An escape code has no
+   * char, so is left out.
+   *
+   * @return the mappings from each leaf char to its code.
+   */
+  Map<Character, String> bitStrings() {
+    Map<Character, String> bitMap = new HashMap<>();
+    int height = height(root());
+    char[] path = new char[height];
+    // Pending children: reference, and depth << 1 | branch bit.
+    int[] refs = new int[height + 1];
+    int[] steps = new int[height + 1];
+    refs[0] = root();
+    int top = 1;
+    while (top > 0) {
+      top--;
+      int ref = refs[top];
+      int depth = steps[top] >> 1;
+      if (depth > 0) {
+        path[depth - 1] = (char) ('0' + (steps[top] & 1));
+      }
+      if (ref >= 0) {
+        refs[top] = one[ref];
+        steps[top++] = (depth + 1) << 1 | 1;
+        refs[top] = zero[ref];
+        steps[top++] = (depth + 1) << 1;
+      }
+      else {
+        if (symbols[~ref] != HuffmanCodebook.ESCAPE) {
+          bitMap.put((char) symbols[~ref], new String(path, 0, depth));
+        }
+      }
+    }
+    return bitMap;
+  }
+
+  /**
+   * Lists the int code of every leaf. Same codes as bitStrings().
+   *
+   * @return the code of each leaf char.
+   * @throws IllegalArgumentException if a code is longer than an int
+   */
+  HuffmanCodebook codebook() {
+    HuffmanCodebook book = new HuffmanCodebook();
+    int height = height(root());
+    int[] refs = new int[height + 1];
+    int[] codes = new int[height + 1];
+    int[] depths = new int[height + 1];
+    refs[0] = root();
+    int top = 1;
+    while (top > 0) {
+      top--;
+      int ref = refs[top];
+      int code = codes[top];
+      int depth = depths[top];
+      if (ref >= 0) {
+        refs[top] = one[ref];
+        codes[top] = code << 1 | 1;
+        depths[top++] = depth + 1;
+        refs[top] = zero[ref];
+        codes[top] = code << 1;
+        depths[top++] = depth + 1;
+      }
+      else {
+        book.put(symbols[~ref], code, depth);
+      }
+    }
+    return book;
+  }
+
+  /**
+   * Builds HuffmanNode objects for this tree, for code that walks nodes
+   * (such as HuffmanTree.display()). Frequencies are all 0, and an
+   * escape leaf has a null char.
+   *
+   * @return root of the new nodes.
+   */
+  HuffmanNode toNodes() {
+    if (parents == 0) {
+      return leaf(0);
+    }
+    HuffmanNode[] made = new HuffmanNode[parents];
+    // Children have higher indexes, so are made first.
+    for (int p = parents - 1; p >= 0; p--) {
+      made[p] = new HuffmanParent(node(made, zero[p]), node(made, one[p]));
+    }
+    return made[0];
+  }
+
+  /**
+   * @param made nodes made so far, by parent index.
+   * @param ref  child reference.
+   * @return     the made parent, or a new leaf.
+   */
+  private HuffmanNode node(HuffmanNode[] made, int ref) {
+    return ref >= 0 ? made[ref] : leaf(~ref);
+  }
+
+  /**
+   * @param leaf leaf index.
+   * @return     a new leaf node for it.
+   */
+  private HuffmanLeaf leaf(int leaf) {
+    int c = symbols[leaf];
+    return new HuffmanLeaf(c != HuffmanCodebook.ESCAPE ? (Character) (char) c : null, 0);
+  }
+}
@@ -0,0 +1,191 @@
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.util.NoSuchElementException;
+
+/**
+ * A text encoded on its own, with its own tree, or stored as plain
+ * chars when a tree would not make it smaller: tiny texts, where the
+ * code lengths header outweighs any saving, or texts of so many
+ * different chars that codes are nearly as long as the chars.
+ *
+ * The choice is made from the text's chars and their counts (see
+ * CharCounts) before any encoding, walking only the chars that occur.
+ * First a quick lower bound (the entropy, and the least the header could
+ * take) rules out texts that cannot shrink, without building a tree.
+ * Otherwise the exact size follows from the code lengths, and the text
+ * is only encoded if that is smaller. Stored blocks decode with a copy.
+ *
+ * Written format:
+ *   1 byte:  STORED or CODED
+ *   4 bytes: number of chars
+ *   STORED:  the chars, 2 bytes each
+ *   CODED:   8-byte number of bits, then the code length header (see
+ *            HuffmanCodebook.writeLengths()) and the codes, packed
+ */
+class HuffmanBlock {
+  /**
+   * Block types.
+   */
+  final static int STORED = 0;
+  final static int CODED = 1;
+
+  /**
+   * Bits of a code length header before its chars: the width of each
+   * length, and the number of chars.
+   */
+  private final static int HEADER_BITS = 3 + 17;
+
+  // Static methods only.
+  private HuffmanBlock() {
+  }
+
+  /**
+   * Encodes a text as a block, coded or stored, whichever is smaller.
+   *
+   * @param text   text to encode.
+   * @param config options to build the tree with. Codes are always
+   *               canonical, so the tree can be stored as code lengths.
+   * @return       the block.
+   */
+  static byte[] encode(char[] text, HuffmanConfig config) {
+    CharCounts counts = CharCounts.of(text);
+    long storedBytes = 2L * text.length;
+    if (codedBytes(minCodedBits(counts)) >= storedBytes) {
+      return stored(text);
+    }
+
+    if (!config.canonicalCodes()) {
+      config = new HuffmanConfig(config.fillGaps(), true, config.maxCodeLength());
+    }
+    HuffmanTree tree = new HuffmanTree(counts, config);
+    HuffmanStats stats = tree.getStats();
+    if (stats == null || tree.codebook().count() < 2
+        || codedBytes(stats.headerBits() + stats.encodedBits()) >= storedBytes) {
+      return stored(text);
+    }
+
+    HuffmanCodebook codes = tree.codebook();
+    BitWriter bits = new BitWriter((int) ((stats.headerBits() + stats.encodedBits()) / 8 + 1));
+    codes.writeLengths(bits);
+    for (char c : text) {
+      bits.writeBits(codes.code(c), codes.length(c));
+    }
+    byte[] packed = bits.toByteArray();
+    ByteBuffer out = ByteBuffer.allocate(1 + 4 + 8 + packed.length);
+    out.put((byte) CODED);
+    out.putInt(text.length);
+    out.putLong(bits.bitLength());
+    out.put(packed);
+    return out.array();
+  }
+
+  /**
+   * Finds a lower bound on the size of a coded text from its char counts
+   * alone, without building a tree. No code can average less than the
+   * entropy, or less than one bit. The header's gaps between chars are
+   * known exactly, and its lengths are at least wide enough for the
+   * shortest possible longest code.
+   *
+   * @param counts the text's chars and their counts.
+   * @return       fewest bits the text could be coded in, header
+   *               included, or Long.MAX_VALUE if it cannot be coded.
+   */
+  private static long minCodedBits(CharCounts counts) {
+    int unique = counts.size();
+    if (unique < 2) return Long.MAX_VALUE; // Nothing to tell apart.
+    long chars = counts.total;
+    long gapBits = 0;
+    int prev = -1;
+    // Entropy is log2(chars) - sum(count * log2(count)) / chars.
+    double countLogs = 0;
+    for (int i = 0; i < unique; i++) {
+      int c = counts.chars[i];
+      countLogs += counts.counts[i] * Math.log(counts.counts[i]);
+      // Elias gamma code of the gap, as in HuffmanCodebook.writeLengths().
+      gapBits += 2 * (31 - Integer.numberOfLeadingZeros(c - prev)) + 1;
+      prev = c;
+    }
+    int minLongest = 32 - Integer.numberOfLeadingZeros(unique - 1);
+    int minWidth = 32 - Integer.numberOfLeadingZeros(minLongest);
+    double entropy = (Math.log(chars) - countLogs / chars) / Math.log(2);
+    double perChar = Math.max(1, entropy);
+    return (long) (chars * perChar)
+         + HEADER_BITS + gapBits + (long) minWidth * unique;
+  }
+
+  /**
+   * @param bits header and code bits of a coded block.
+   * @return     bytes the block takes after its type and char count.
+   */
+  private static long codedBytes(long bits) {
+    return bits == Long.MAX_VALUE ? bits : 8 + (bits + 7) / 8;
+  }
+
+  /**
+   * @param text text to store.
+   * @return     stored block of text.
+   */
+  private static byte[] stored(char[] text) {
+    ByteBuffer out = ByteBuffer.allocate(1 + 4 + 2 * text.length);
+    out.put((byte) STORED);
+    out.putInt(text.length);
+    out.asCharBuffer().put(text);
+    return out.array();
+  }
+
+  /**
+   * Decodes a block written by encode().
+   *
+   * @param in bytes to read, starting at the buffer's position, which is
+   *           advanced past the block.
+   * @return   the decoded text.
+   * @throws IllegalArgumentException if in is not a valid block
+   * @throws IllegalStateException    if a coded block's bits do not
+   *         decode to its number of chars
+   */
+  static char[] decode(ByteBuffer in) {
+    try {
+      int type = in.get();
+      int n = in.getInt();
+      if (n < 0) {
+        throw new IllegalArgumentException("Bad block length " + n + ".");
+      }
+      if (type == STORED) {
+        if (n > in.remaining() / 2) {
+          throw new IllegalArgumentException("Block is truncated.");
+        }
+        char[] text = new char[n];
+        in.asCharBuffer().get(text);
+        in.position(in.position() + 2 * n);
+        return text;
+      }
+      if (type != CODED) {
+        throw new IllegalArgumentException("Bad block type " + type + ".");
+      }
+      long bitLength = in.getLong();
+      BitReader bits = new BitReader(in, bitLength);
+      // Every char takes at least a bit.
+      if (n > bitLength) {
+        throw new IllegalArgumentException("Block is truncated.");
+      }
+      HuffmanTree tree = HuffmanTree.fromCodeLengths(bits);
+      TableDecoder table = tree.decoder();
+      char[] text = new char[n];
+      for (int i = 0; i < n; i++) {
+        int c = table.decode(bits);
+        if (c < 0) {
+          throw new IllegalStateException("Ran out of bits during decode.");
+        }
+        text[i] = (char) c;
+      }
+      if (bits.hasNext()) {
+        throw new IllegalStateException("Block has bits left over.");
+      }
+      in.position(in.position() + (int) ((bitLength + 7) >>> 3));
+      return text;
+    }
+    catch (BufferUnderflowException | NoSuchElementException e) {
+      throw new IllegalArgumentException("Block is truncated.");
+    }
+  }
+}
@@ -0,0 +1,321 @@
+import java.util.Arrays;
+import java.util.NoSuchElementException;
+
+/**
+ * Code for every char of a Huffman Tree, stored as plain int arrays
+ * indexed by char rather than a Map of bit Strings. A code is the lowest
+ * length(c) bits of code(c), first bit most significant: the same order
+ * bitStrings() would spell it out in.
+ *
+ * A canonical codebook is assigned from code lengths alone: shorter codes
+ * come first, and codes of equal length are in char order. Since the
+ * lengths are all a decoder needs to rebuild the codes, a canonical tree
+ * can be stored as just its code lengths (see writeLengths()).
+ *
+ * A codebook may also have a code for ESCAPE, one past the last char.
+ * Chars with no code of their own are then written as the escape code
+ * followed by the char itself in ESCAPED_CHAR_BITS bits, so every char
+ * can be encoded (see HuffmanTree.fromSample()).
+ */
+class HuffmanCodebook {
+  /**
+   * Longest code that fits in an int.
+   */
+  final static int MAX_CODE_LENGTH = 32;
+
+  /**
+   * Symbol whose code is followed by a char that has no code.
+   */
+  final static int ESCAPE = HuffmanTree.ALPHABET_SIZE;
+
+  /**
+   * Bits of a char written after the escape code.
+   */
+  final static int ESCAPED_CHAR_BITS = 16;
+
+  /**
+   * Longest escape code, so an escaped char still fits in an int.
+   */
+  final static int MAX_ESCAPE_LENGTH = MAX_CODE_LENGTH - ESCAPED_CHAR_BITS;
+
+  /**
+   * Bits used to store the number of chars in a code length header.
+   * Enough for every possible char.
+   */
+  private final static int COUNT_BITS = 17;
+
+  /**
+   * Widest code length field in a header: enough for MAX_CODE_LENGTH.
+   */
+  private final static int MAX_WIDTH = 32 - Integer.numberOfLeadingZeros(MAX_CODE_LENGTH);
+
+  /**
+   * Code bits for each char. Meaningless where the length is 0.
+   */
+  int[] codes;
+  /**
+   * Code length in bits for each char, or 0 if char has no code.
+   */
+  byte[] lengths;
+  /**
+   * Longest code length in this codebook.
+   */
+  private int maxLength = 0;
+  /**
+   * Number of chars with a code.
+   */
+  private int count = 0;
+
+  /**
+   * Constructs an empty codebook, to be filled in with put().
+   */
+  HuffmanCodebook() {
+    codes = new int[0];
+    lengths = new byte[0];
+  }
+
+  /**
+   * Adds the code for one char.
+   *
+   * @param c      char to set the code of
+   * @param code   code bits, right-aligned
+   * @param length number of bits in code, at least 1
+   * @throws IllegalArgumentException if length is over MAX_CODE_LENGTH,
+   *         or over MAX_ESCAPE_LENGTH for ESCAPE
+   */
+  void put(int c, int code, int length) {
+    int max = c == ESCAPE ? MAX_ESCAPE_LENGTH : MAX_CODE_LENGTH;
+    if (length > max) {
+      throw new IllegalArgumentException("Code for char " + c + " is "
+          + length + " bits; at most " + max + " are supported.");
+    }
+    if (c >= lengths.length) {
+      int size = Math.max(c + 1, lengths.length * 2);
+      codes = Arrays.copyOf(codes, size);
+      lengths = Arrays.copyOf(lengths, size);
+    }
+    if (lengths[c] == 0) count++;
+    codes[c] = code;
+    lengths[c] = (byte) length;
+    maxLength = Math.max(maxLength, length);
+  }
+
+  /**
+   * Assigns canonical codes for a set of code lengths.
+   *
+   * @param lengths code length of each char, 0 for chars without a code.
+   * @return        canonical codebook with those lengths.
+   * @throws IllegalArgumentException if the lengths are too long or
+   *         there are too many short ones to form a prefix code
+   */
+  static HuffmanCodebook canonical(byte[] lengths) {
+    // How many codes there are of each length.
+    int[] lengthCounts = new int[MAX_CODE_LENGTH + 1];
+    for (byte len : lengths) {
+      if (len < 0 || len > MAX_CODE_LENGTH) {
+        throw new IllegalArgumentException("Bad code length " + len + ".");
+      }
+      lengthCounts[len]++;
+    }
+    lengthCounts[0] = 0;
+
+    // First code of each length: one past the last code of the previous
+    //   length, shifted to make room for the extra bit.
+    long[] nextCode = new long[MAX_CODE_LENGTH + 2];
+    long code = 0;
+    for (int len = 1; len <= MAX_CODE_LENGTH; len++) {
+      code = (code + lengthCounts[len - 1]) << 1;
+      nextCode[len] = code;
+      if (code + lengthCounts[len] > (1L << len)) {
+        throw new IllegalArgumentException("Too many codes of length " + len + ".");
+      }
+    }
+
+    HuffmanCodebook book = new HuffmanCodebook();
+    for (int c = lengths.length - 1; c >= 0; c--) {
+      // Backwards so the arrays are sized on the first put().
+      if (lengths[c] > 0) {
+        book.put(c, 0, lengths[c]);
+      }
+    }
+    for (int c = 0; c < book.lengths.length; c++) {
+      int len = book.lengths[c];
+      if (len > 0) {
+        book.codes[c] = (int) nextCode[len]++;
+      }
+    }
+    return book;
+  }
+
+  /**
+   * @param c char to look up
+   * @return  number of bits in the char's code, or in its escape code
+   *          and the char if it has none, or 0 if it cannot be encoded
+   */
+  int length(int c) {
+    if (c < lengths.length && lengths[c] > 0) return lengths[c];
+    return c < ESCAPE && hasEscape() ? lengths[ESCAPE] + ESCAPED_CHAR_BITS : 0;
+  }
+
+  /**
+   * @param c char to look up; must have a length
+   * @return  the char's code bits, right-aligned, or its escape code
+   *          followed by the char
+   */
+  int code(int c) {
+    if (c < lengths.length && lengths[c] > 0) return codes[c];
+    return codes[ESCAPE] << ESCAPED_CHAR_BITS | c;
+  }
+
+  /**
+   * @return true if chars without codes are encoded after an escape code
+   */
+  boolean hasEscape() {
+    return lengths.length > ESCAPE && lengths[ESCAPE] > 0;
+  }
+
+  /**
+   * @return longest code length in this codebook
+   */
+  int maxLength() {
+    return maxLength;
+  }
+
+  /**
+   * @return number of chars with a code, counting ESCAPE
+   */
+  int count() {
+    return count;
+  }
+
+  /**
+   * @return one past the largest char this codebook has room for
+   */
+  int size() {
+    return lengths.length;
+  }
+
+  /**
+   * Lists the chars with codes in the order of their codes, as if the
+   * codes were sorted as bit Strings. For a canonical codebook this is
+   * by length, then by char.
+   *
+   * @return chars with codes, in code order
+   */
+  int[] codeOrder() {
+    int[] order = new int[count];
+    int i = 0;
+    for (int len = 1; len <= maxLength; len++) {
+      for (int c = 0; c < lengths.length; c++) {
+        if (lengths[c] == len) order[i++] = c;
+      }
+    }
+    return order;
+  }
+
+  //===============================\\
+  // CODE LENGTH HEADER READ/WRITE \\
+  //===============================\\
+
+  /**
+   * Writes this codebook's code lengths as a compact header, enough to
+   * rebuild a canonical codebook with canonical(). Format:
+   *    3 bits:  width W of each length, minus 1
+   *   17 bits:  number of chars N
+   *   N times:  gap since the previous char (Elias gamma code), then
+   *             the code length in W bits
+   * Chars are listed in increasing order, so typical alphabets of
+   * neighboring chars cost 1 bit per char plus the length.
+   *
+   * @param out bits to append the header to
+   */
+  void writeLengths(BitWriter out) {
+    int width = 32 - Integer.numberOfLeadingZeros(maxLength);
+    width = Math.max(1, width);
+    out.writeBits(width - 1, 3);
+    out.writeBits(count, COUNT_BITS);
+    int prev = -1;
+    for (int c = 0; c < lengths.length; c++) {
+      if (lengths[c] == 0) continue;
+      writeGamma(out, c - prev);
+      out.writeBits(lengths[c], width);
+      prev = c;
+    }
+  }
+
+  /**
+   * Reads a header written by writeLengths(). Headers that could not have
+   * been written are rejected before anything is allocated for them.
+   *
+   * @param in bits to read the header from, advanced past it
+   * @return   code length of each char
+   * @throws NoSuchElementException   if in runs out partway through
+   * @throws IllegalArgumentException if the lengths are too wide, or a
+   *         char is past ESCAPE
+   */
+  static byte[] readLengths(BitReader in) {
+    int width = in.readBits(3) + 1;
+    if (width > MAX_WIDTH) {
+      throw new IllegalArgumentException("Code lengths of " + width
+          + " bits are too wide; codes are at most " + MAX_CODE_LENGTH + " bits.");
+    }
+    int n = in.readBits(COUNT_BITS);
+    if (n > ESCAPE + 1) {
+      throw new IllegalArgumentException("Header has " + n + " chars; at most "
+          + (ESCAPE + 1) + " are possible.");
+    }
+    int[] chars = new int[n];
+    byte[] lens = new byte[n];
+    int c = -1;
+    for (int i = 0; i < n; i++) {
+      c += readGamma(in, ESCAPE - c);
+      chars[i] = c;
+      lens[i] = (byte) in.readBits(width);
+    }
+    byte[] lengths = new byte[c + 1];
+    for (int i = 0; i < n; i++) {
+      lengths[chars[i]] = lens[i];
+    }
+    return lengths;
+  }
+
+  /**
+   * Writes a positive int as an Elias gamma code: one 0 per bit after
+   * the first, then the int itself. Small ints take few bits (1 is "1").
+   *
+   * @param out   bits to append to
+   * @param value int to write, at least 1
+   */
+  private static void writeGamma(BitWriter out, int value) {
+    int bits = 32 - Integer.numberOfLeadingZeros(value);
+    out.writeBits(0, bits - 1);
+    out.writeBits(value, bits);
+  }
+
+  /**
+   * Reads an int written by writeGamma().
+   *
+   * @param in  bits to read from
+   * @param max largest int allowed, at least 1
+   * @return    the int, from 1 to max
+   * @throws IllegalArgumentException if the int is over max
+   */
+  private static int readGamma(BitReader in, int max) {
+    int maxZeros = 31 - Integer.numberOfLeadingZeros(max);
+    int zeros = 0;
+    while (in.readBit() == 0) {
+      zeros++;
+      if (zeros > maxZeros) {
+        throw new IllegalArgumentException("Gap in code lengths is over " + max + ".");
+      }
+    }
+    int value = 1;
+    for (int i = 0; i < zeros; i++) {
+      value = value << 1 | in.readBit();
+    }
+    if (value > max) {
+      throw new IllegalArgumentException("Gap in code lengths is over " + max + ".");
+    }
+    return value;
+  }
+}
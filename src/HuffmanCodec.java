@@ -0,0 +1,343 @@
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+
+/**
+ * Encoder and decoder for the codes of one Huffman Tree, for many small
+ * messages rather than one big file. A HuffmanTree builds its codebook
+ * and decode tables the first time they are needed, so threads sharing
+ * a tree may race to build them. A codec builds both up front and never
+ * changes afterwards, so one codec can be shared by any number of
+ * threads.
+ *
+ * Each message is encoded on its own, as its bit count (8 bytes) then
+ * its packed bits: the same format as Driver.writePacked(). A batch of
+ * messages can be encoded or decoded at once on an ExecutorService (see
+ * encodeAll() and decodeAll()).
+ *
+ * For encoding without garbage, each thread can take its own
+ * HuffmanEncoder from newEncoder(), which writes into the caller's
+ * buffers and allocates nothing.
+ *
+ * Each codec keeps running totals of its work (see metrics()), and each
+ * encode and decode is a HuffmanEvents event.
+ */
+final class HuffmanCodec {
+  /**
+   * Most messages handled by one task of encodeAll() or decodeAll(), so
+   * small messages do not each pay for a task of their own.
+   */
+  final static int BATCH_MESSAGES = 64;
+
+  /**
+   * Bytes of the bit count before each message's bits.
+   */
+  private final static int HEADER_BYTES = 8;
+
+  /**
+   * Code for each char.
+   */
+  private final HuffmanCodebook codes;
+  /**
+   * Decode tables for the same codes.
+   */
+  private final TableDecoder decoder;
+  /**
+   * The same codes, flattened for HuffmanEncoder.
+   */
+  private final long[] encodeTable;
+  /**
+   * Stats of the tree, or null if it was not built from text.
+   */
+  private final HuffmanStats stats;
+  /**
+   * Totals of the work done by this codec.
+   */
+  private final HuffmanMetrics metrics = new HuffmanMetrics();
+
+  /**
+   * Constructs a codec for a tree's codes. The tree should not be used
+   * by other threads until this returns; the codec itself can be.
+   *
+   * @param tree tree to encode and decode with.
+   * @throws IllegalArgumentException if tree has fewer than 2 codes,
+   *         which could not tell messages of different lengths apart
+   */
+  HuffmanCodec(HuffmanTree tree) {
+    if (!tree.isValid() || tree.codebook().count() < 2) {
+      throw new IllegalArgumentException("Tree needs at least 2 codes.");
+    }
+    codes = tree.codebook();
+    decoder = tree.decoder();
+    encodeTable = HuffmanEncoder.table(codes);
+    stats = tree.getStats();
+  }
+
+  /**
+   * Builds a codec from the frequencies of a sample of text.
+   *
+   * @param text   text to base frequencies on, such as typical messages.
+   * @param config options to build the tree with.
+   * @return       codec for a tree built from text.
+   * @throws IllegalArgumentException if text has fewer than 2 distinct
+   *         chars (and config fills in no gaps)
+   */
+  static HuffmanCodec build(char[] text, HuffmanConfig config) {
+    HuffmanCodec codec = new HuffmanCodec(new HuffmanTree(text, config));
+    if (codec.stats != null) {
+      codec.metrics.recordBuild(text.length, codec.stats.buildNanos());
+    }
+    return codec;
+  }
+
+  /**
+   * Builds a codec from chars already counted (see TreeCache).
+   *
+   * @param counts chars to give codes, and their frequencies.
+   * @param config options to build the tree with.
+   * @return       codec for a tree built from counts.
+   * @throws IllegalArgumentException if there are fewer than 2 distinct
+   *         chars (and config fills in no gaps)
+   */
+  static HuffmanCodec build(CharCounts counts, HuffmanConfig config) {
+    HuffmanCodec codec = new HuffmanCodec(new HuffmanTree(counts, config));
+    if (codec.stats != null) {
+      codec.metrics.recordBuild(counts.total, codec.stats.buildNanos());
+    }
+    return codec;
+  }
+
+  /**
+   * @param c char to look up.
+   * @return  true if c can be encoded, with its own code or an escape
+   */
+  boolean canEncode(char c) {
+    return codes.length(c) > 0;
+  }
+
+  /**
+   * Creates an encoder for this codec's codes, for one thread to reuse.
+   * Encoders share this codec's code table, so each costs only a few
+   * fields. Its encodes are not counted in metrics().
+   *
+   * @return new encoder, writing bits in the same order as encode().
+   */
+  HuffmanEncoder newEncoder() {
+    return new HuffmanEncoder(encodeTable);
+  }
+
+  /**
+   * @return how well the tree fits the text it was built from, or null
+   *         if it was not built from text (such as a loaded tree)
+   */
+  HuffmanStats stats() {
+    return stats;
+  }
+
+  /**
+   * @return running totals of this codec's builds, encodes and decodes,
+   *         counted from every thread
+   */
+  HuffmanMetrics metrics() {
+    return metrics;
+  }
+
+  //=================\\
+  // ENCODE / DECODE \\
+  //=================\\
+
+  /**
+   * Encodes one message.
+   *
+   * @param message text to encode.
+   * @return        bit count and packed bits of the message.
+   * @throws IllegalArgumentException if a char of message cannot be
+   *         encoded. Unlike Driver.encode(), no chars are skipped, so
+   *         every message decodes back to exactly what was encoded.
+   */
+  byte[] encode(String message) {
+    Object event = HuffmanEvents.SINK.begin(HuffmanEvents.ENCODE);
+    long start = System.nanoTime();
+    BitWriter bits = new BitWriter(message.length() / 2 + 1);
+    int i = 0;
+    try {
+      for (; i < message.length(); i++) {
+        char c = message.charAt(i);
+        int len = codes.length(c);
+        if (len == 0) {
+          throw new IllegalArgumentException("Char " + (int) c + " at index " + i
+                                           + " has no code.");
+        }
+        bits.writeBits(codes.code(c), len);
+      }
+      byte[] packed = bits.toByteArray();
+      ByteBuffer out = ByteBuffer.allocate(HEADER_BYTES + packed.length);
+      out.putLong(bits.bitLength());
+      out.put(packed);
+      metrics.recordEncode(message.length(), out.capacity(), System.nanoTime() - start);
+      return out.array();
+    }
+    finally {
+      HuffmanEvents.SINK.commit(event, i, bits.bitLength());
+    }
+  }
+
+  /**
+   * Decodes one message written by encode().
+   *
+   * @param message bit count and packed bits.
+   * @return        the decoded text.
+   * @throws IllegalArgumentException if message is too short for its
+   *         bit count
+   * @throws IllegalStateException    if the bits end partway through a
+   *         code
+   */
+  String decode(byte[] message) {
+    if (message.length < HEADER_BYTES) {
+      throw new IllegalArgumentException("Message of " + message.length
+          + " bytes has no bit count.");
+    }
+    Object event = HuffmanEvents.SINK.begin(HuffmanEvents.DECODE);
+    long start = System.nanoTime();
+    ByteBuffer in = ByteBuffer.wrap(message);
+    long bitLength = in.getLong();
+    StringBuilder out = new StringBuilder();
+    try {
+      BitReader bits = new BitReader(in, bitLength);
+      while (bits.hasNext()) {
+        int c = decoder.decode(bits);
+        if (c < 0) {
+          throw new IllegalStateException("Ran out of bits during decode.");
+        }
+        out.append((char) c);
+      }
+      metrics.recordDecode(message.length, out.length(), System.nanoTime() - start);
+      return out.toString();
+    }
+    finally {
+      HuffmanEvents.SINK.commit(event, out.length(), bitLength);
+    }
+  }
+
+  //===========\\
+  // BATCH API \\
+  //===========\\
+
+  /**
+   * Encodes a batch of messages on an executor, BATCH_MESSAGES to a task.
+   * Any executor works; on Java 21 or later, one from
+   * Executors.newVirtualThreadPerTaskExecutor() needs no sizing.
+   *
+   * @param messages texts to encode.
+   * @param executor runs the tasks. Not shut down.
+   * @return         encode() of each message, in the same order.
+   * @throws IllegalArgumentException if a char of a message cannot be
+   *         encoded (the first such message's exception is rethrown)
+   * @throws InterruptedException     if interrupted while waiting; the
+   *         remaining tasks are cancelled
+   */
+  List<byte[]> encodeAll(List<String> messages, ExecutorService executor)
+      throws InterruptedException {
+    final String[] in = messages.toArray(new String[0]);
+    final byte[][] out = new byte[in.length][];
+    runBatches(in.length, executor, new Batch() {
+      public void run(int from, int to) {
+        for (int i = from; i < to; i++) {
+          out[i] = encode(in[i]);
+        }
+      }
+    });
+    return Arrays.asList(out);
+  }
+
+  /**
+   * Decodes a batch of messages on an executor, BATCH_MESSAGES to a task.
+   *
+   * @param messages messages written by encode().
+   * @param executor runs the tasks. Not shut down.
+   * @return         decode() of each message, in the same order.
+   * @throws IllegalArgumentException if a message is too short
+   * @throws IllegalStateException    if a message's bits do not decode
+   * @throws InterruptedException     if interrupted while waiting; the
+   *         remaining tasks are cancelled
+   */
+  List<String> decodeAll(List<byte[]> messages, ExecutorService executor)
+      throws InterruptedException {
+    final byte[][] in = messages.toArray(new byte[0][]);
+    final String[] out = new String[in.length];
+    runBatches(in.length, executor, new Batch() {
+      public void run(int from, int to) {
+        for (int i = from; i < to; i++) {
+          out[i] = decode(in[i]);
+        }
+      }
+    });
+    return Arrays.asList(out);
+  }
+
+  /**
+   * Work on a range of messages, run by runBatches().
+   */
+  private interface Batch {
+    /**
+     * @param from index of the first message.
+     * @param to   one past the index of the last message.
+     */
+    void run(int from, int to);
+  }
+
+  /**
+   * Splits messages into tasks of up to BATCH_MESSAGES, runs them, and
+   * waits for all of them. Results written by the tasks are visible to
+   * the caller once this returns.
+   *
+   * @param count    number of messages.
+   * @param executor runs the tasks.
+   * @param batch    work for each task.
+   * @throws InterruptedException if interrupted while waiting
+   */
+  private static void runBatches(int count, ExecutorService executor, final Batch batch)
+      throws InterruptedException {
+    List<Future<Void>> tasks = new ArrayList<>();
+    for (int start = 0; start < count; start += BATCH_MESSAGES) {
+      final int from = start;
+      final int to = Math.min(count, start + BATCH_MESSAGES);
+      tasks.add(executor.submit(new Callable<Void>() {
+        public Void call() {
+          batch.run(from, to);
+          return null;
+        }
+      }));
+    }
+    try {
+      for (Future<Void> task : tasks) {
+        task.get();
+      }
+    }
+    catch (ExecutionException ee) {
+      cancel(tasks);
+      Throwable cause = ee.getCause();
+      if (cause instanceof RuntimeException) throw (RuntimeException) cause;
+      if (cause instanceof Error) throw (Error) cause;
+      throw new IllegalStateException(cause);
+    }
+    catch (InterruptedException ie) {
+      cancel(tasks);
+      throw ie;
+    }
+  }
+
+  /**
+   * @param tasks tasks to cancel, if not yet done.
+   */
+  private static void cancel(List<Future<Void>> tasks) {
+    for (Future<Void> task : tasks) {
+      task.cancel(true);
+    }
+  }
+}
@@ -0,0 +1,74 @@
+/**
+ * Options for building Huffman Trees from text. A config never changes
+ * once made, so one config can be shared by any number of trees and
+ * threads. Driver makes its own from its constants (see Driver.CONFIG).
+ */
+final class HuffmanConfig {
+  /**
+   * Trees with just the chars counted, canonical codes, and no length
+   * limit beyond what fits in an int.
+   */
+  final static HuffmanConfig DEFAULT = new HuffmanConfig(false, true, 0);
+
+  /**
+   * True to "fill in gaps" in the alphabet (see HuffmanTree.freqGapCheck()).
+   */
+  private final boolean fillGaps;
+  /**
+   * True to assign canonical codes from code lengths.
+   */
+  private final boolean canonicalCodes;
+  /**
+   * Longest code allowed in canonical trees, or 0 for no limit.
+   */
+  private final int codeLengthLimit;
+
+  /**
+   * Constructs a config.
+   *
+   * @param fillGaps        true to give common chars codes even if they
+   *                        were not counted.
+   * @param canonicalCodes  true for canonical codes, computed from code
+   *                        lengths without building nodes.
+   * @param codeLengthLimit longest code allowed in canonical trees, or 0
+   *                        for no limit.
+   * @throws IllegalArgumentException if codeLengthLimit is negative or
+   *         over HuffmanCodebook.MAX_CODE_LENGTH
+   */
+  HuffmanConfig(boolean fillGaps, boolean canonicalCodes, int codeLengthLimit) {
+    if (codeLengthLimit < 0 || codeLengthLimit > HuffmanCodebook.MAX_CODE_LENGTH) {
+      throw new IllegalArgumentException("Bad code length limit " + codeLengthLimit + ".");
+    }
+    this.fillGaps = fillGaps;
+    this.canonicalCodes = canonicalCodes;
+    this.codeLengthLimit = codeLengthLimit;
+  }
+
+  /**
+   * @return true if common chars get codes even if they were not counted
+   */
+  boolean fillGaps() {
+    return fillGaps;
+  }
+
+  /**
+   * @return true if trees use canonical codes
+   */
+  boolean canonicalCodes() {
+    return canonicalCodes;
+  }
+
+  /**
+   * @return longest code allowed in canonical trees: the limit, or
+   *         HuffmanCodebook.MAX_CODE_LENGTH if there is none
+   */
+  int maxCodeLength() {
+    return codeLengthLimit > 0 ? codeLengthLimit : HuffmanCodebook.MAX_CODE_LENGTH;
+  }
+
+  @Override
+  public String toString() {
+    return "HuffmanConfig[fillGaps=" + fillGaps + ", canonicalCodes=" + canonicalCodes
+         + ", codeLengthLimit=" + codeLengthLimit + "]";
+  }
+}
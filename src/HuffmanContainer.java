@@ -0,0 +1,592 @@
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.NoSuchElementException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.zip.Checksum;
+
+/**
+ * A self-describing encoded file: everything needed to decode it is in
+ * the file itself. It holds the tree, or the id of a built-in tree, so
+ * the decoder need not be told which tree was used. It holds the text's
+ * length and each block's char count, so padding at the end of a block
+ * is never mistaken for chars. Every block has its own CRC-32C (see
+ * Crc32c), as does the header, so a file can be checked without
+ * decoding it (see verify()).
+ *
+ * Written format, all numbers big-endian:
+ *   4 bytes: MAGIC
+ *   1 byte:  VERSION
+ *   1 byte:  tree kind: STD_TREE, TEST_TREE, CODE_LENGTHS, NODES or
+ *            BLOCK_TREES
+ *   4 bytes: chars per block (every block but the last is full)
+ *   8 bytes: chars in the text
+ *   CODE_LENGTHS or NODES only:
+ *     4 bytes: bits in the tree
+ *     the tree, packed (see HuffmanCodebook.writeLengths() and
+ *     FlatTree.writeWideBitRep())
+ *   4 bytes: CRC-32C of the header so far
+ * then for each block:
+ *   4 bytes: chars in the block
+ *   4 bytes: bytes in the block's data
+ *   4 bytes: CRC-32C of the 8 bytes above and the data
+ *   data:    the chars' codes, packed, or for BLOCK_TREES a HuffmanBlock
+ *            with its own tree
+ */
+final class HuffmanContainer {
+  /**
+   * First bytes of every container: "HUFC".
+   */
+  final static int MAGIC = 0x48554643;
+
+  /**
+   * Format version written, and the only one read.
+   */
+  final static int VERSION = 1;
+
+  /**
+   * Tree kinds. The built-in trees have the same ids as
+   * Driver.TREE_TYPE_STD and Driver.TREE_TYPE_TEST.
+   */
+  final static int STD_TREE = 1;      // HuffmanTree.stdTree(), not stored
+  final static int TEST_TREE = 2;     // HuffmanTree.testTree(), not stored
+  final static int CODE_LENGTHS = 3;  // Canonical tree, as code lengths
+  final static int NODES = 4;         // Any other tree, node by node
+  final static int BLOCK_TREES = 5;   // A tree in each block
+
+  /**
+   * Default chars per block: a checksum every 128 KB of text.
+   */
+  final static int BLOCK_CHARS = 1 << 16;
+
+  /**
+   * Bytes before each block's data: chars, bytes and CRC.
+   */
+  private final static int BLOCK_HEADER_BYTES = 12;
+
+  // Static methods only.
+  private HuffmanContainer() {
+  }
+
+  //========\\
+  // ENCODE \\
+  //========\\
+
+  /**
+   * Encodes a text with one tree for the whole text.
+   *
+   * @param text        text to encode.
+   * @param tree        tree to encode with.
+   * @param builtInTree STD_TREE or TEST_TREE if tree is that built-in tree,
+   *                    so only its id is stored, or 0 to store the tree.
+   * @param blockChars  chars per block.
+   * @param pool        threads to encode the blocks on (see
+   *                    BlockEncoder), or null to encode on this thread.
+   * @return            the container.
+   * @throws IllegalArgumentException if a char of text has no code (no
+   *         chars are skipped, so the text decodes exactly), if the
+   *         tree's codes are too long for ints, or if blockChars is not
+   *         positive
+   */
+  static byte[] encode(char[] text, HuffmanTree tree, int builtInTree, int blockChars,
+                       ForkJoinPool pool) {
+    checkBlockChars(blockChars);
+    HuffmanCodebook codes = tree.codebook();
+    BitWriter treeBits = null;
+    int kind = builtInTree;
+    if (builtInTree != STD_TREE && builtInTree != TEST_TREE) {
+      treeBits = new BitWriter();
+      if (tree.isCanonical()) {
+        kind = CODE_LENGTHS;
+        codes.writeLengths(treeBits);
+      }
+      else {
+        kind = NODES;
+        treeBits.writeBits(tree.wideBitRep());
+      }
+    }
+
+    Object event = HuffmanEvents.SINK.begin(HuffmanEvents.ENCODE);
+    ByteArrayOutputStream bytes = new ByteArrayOutputStream(text.length / 2 + 64);
+    int encoded = 0;
+    try {
+      DataOutputStream out = new DataOutputStream(bytes);
+      writeHeader(out, kind, blockChars, text.length, treeBits);
+      if (pool != null) {
+        // BlockEncoder skips chars with no code, so look for them first.
+        for (int i = 0; i < text.length; i++) {
+          if (codes.length(text[i]) == 0) {
+            throw new IllegalArgumentException("Char " + (int) text[i] + " at index " + i
+                                             + " has no code.");
+          }
+        }
+        BitWriter[] blocks = BlockEncoder.encodeBlocks(codes, text, blockChars, pool);
+        for (int b = 0; b < blocks.length; b++) {
+          int start = b * blockChars;
+          writeBlock(out, Math.min(text.length - start, blockChars), blocks[b].toByteArray());
+        }
+        encoded = text.length;
+        return bytes.toByteArray();
+      }
+      BitWriter bits = new BitWriter(blockChars / 2);
+      for (int start = 0; start < text.length; start += blockChars) {
+        int end = Math.min(text.length, start + blockChars);
+        bits.clear();
+        for (int i = start; i < end; i++) {
+          int len = codes.length(text[i]);
+          if (len == 0) {
+            throw new IllegalArgumentException("Char " + (int) text[i] + " at index " + i
+                                             + " has no code.");
+          }
+          bits.writeBits(codes.code(text[i]), len);
+        }
+        writeBlock(out, end - start, bits.toByteArray());
+        encoded = end;
+      }
+      return bytes.toByteArray();
+    }
+    catch (IOException ioe) {
+      // Only written to memory.
+      throw new IllegalStateException(ioe);
+    }
+    finally {
+      HuffmanEvents.SINK.commit(event, encoded, 8L * bytes.size());
+    }
+  }
+
+  /**
+   * Encodes a text with a tree built for each block from that block's
+   * chars, so blocks that differ in their chars are each coded well. A
+   * block that no tree would shrink is stored (see HuffmanBlock).
+   *
+   * @param text       text to encode.
+   * @param config     options to build each block's tree with.
+   * @param blockChars chars per block.
+   * @param pool       threads to encode the blocks on, one task per block,
+   *                   or null to encode on this thread.
+   * @return           the container.
+   * @throws IllegalArgumentException if blockChars is not positive
+   */
+  static byte[] encodeBlockTrees(char[] text, HuffmanConfig config, int blockChars,
+                                 ForkJoinPool pool) {
+    checkBlockChars(blockChars);
+    Object event = HuffmanEvents.SINK.begin(HuffmanEvents.ENCODE);
+    ByteArrayOutputStream bytes = new ByteArrayOutputStream(text.length / 2 + 64);
+    int encoded = 0;
+    try {
+      byte[][] blocks = new byte[(int) ((text.length + (long) blockChars - 1) / blockChars)][];
+      if (pool != null && blocks.length > 0) {
+        pool.invoke(new BlockTreeTask(text, config, blockChars, blocks, 0, blocks.length));
+      }
+      else {
+        for (int b = 0; b < blocks.length; b++) {
+          blocks[b] = blockTree(text, config, blockChars, b);
+        }
+      }
+      DataOutputStream out = new DataOutputStream(bytes);
+      writeHeader(out, BLOCK_TREES, blockChars, text.length, null);
+      for (int b = 0; b < blocks.length; b++) {
+        int start = b * blockChars;
+        writeBlock(out, Math.min(text.length - start, blockChars), blocks[b]);
+      }
+      encoded = text.length;
+      return bytes.toByteArray();
+    }
+    catch (IOException ioe) {
+      throw new IllegalStateException(ioe);
+    }
+    finally {
+      HuffmanEvents.SINK.commit(event, encoded, 8L * bytes.size());
+    }
+  }
+
+  /**
+   * @param text       whole text being encoded.
+   * @param config     options to build the block's tree with.
+   * @param blockChars chars per block.
+   * @param index      index of the block to encode.
+   * @return           the block's data: a HuffmanBlock.
+   */
+  private static byte[] blockTree(char[] text, HuffmanConfig config, int blockChars,
+                                  int index) {
+    int start = index * blockChars;
+    int end = Math.min(text.length, start + blockChars);
+    return HuffmanBlock.encode(Arrays.copyOfRange(text, start, end), config);
+  }
+
+  /**
+   * Task encoding a range of blocks with their own trees, splitting
+   * itself in half until there is only one block left.
+   */
+  private static class BlockTreeTask extends RecursiveAction {
+    private final static long serialVersionUID = 1L;
+
+    private final char[] text;
+    private final HuffmanConfig config;
+    private final int blockChars;
+    private final byte[][] results;
+    private final int first;
+    private final int last;
+
+    /**
+     * @param text       whole text being encoded.
+     * @param config     options to build each block's tree with.
+     * @param blockChars chars per block.
+     * @param results    data of each block, filled in by this task.
+     * @param first      index of first block to encode.
+     * @param last       one past the index of the last block to encode.
+     */
+    BlockTreeTask(char[] text, HuffmanConfig config, int blockChars,
+                  byte[][] results, int first, int last) {
+      this.text = text;
+      this.config = config;
+      this.blockChars = blockChars;
+      this.results = results;
+      this.first = first;
+      this.last = last;
+    }
+
+    @Override
+    protected void compute() {
+      if (last - first > 1) {
+        int mid = (first + last) >>> 1;
+        invokeAll(new BlockTreeTask(text, config, blockChars, results, first, mid),
+                  new BlockTreeTask(text, config, blockChars, results, mid, last));
+        return;
+      }
+      results[first] = blockTree(text, config, blockChars, first);
+    }
+  }
+
+  /**
+   * @param blockChars chars per block, to check.
+   * @throws IllegalArgumentException if blockChars is not positive
+   */
+  private static void checkBlockChars(int blockChars) {
+    if (blockChars <= 0) {
+      throw new IllegalArgumentException("Block size must be positive: " + blockChars);
+    }
+  }
+
+  /**
+   * Writes the header, with its CRC.
+   *
+   * @param out        stream to write to.
+   * @param kind       tree kind.
+   * @param blockChars chars per block.
+   * @param length     chars in the text.
+   * @param tree       the tree's bits if stored, else null.
+   * @throws IOException if out cannot be written
+   */
+  private static void writeHeader(DataOutputStream out, int kind, int blockChars,
+                                  long length, BitWriter tree) throws IOException {
+    ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+    DataOutputStream header = new DataOutputStream(bytes);
+    header.writeInt(MAGIC);
+    header.writeByte(VERSION);
+    header.writeByte(kind);
+    header.writeInt(blockChars);
+    header.writeLong(length);
+    if (tree != null) {
+      header.writeInt((int) tree.bitLength());
+      tree.writeTo(header);
+    }
+    byte[] written = bytes.toByteArray();
+    Checksum crc = Crc32c.create();
+    crc.update(written, 0, written.length);
+    out.write(written);
+    out.writeInt((int) crc.getValue());
+  }
+
+  /**
+   * Writes one block, with its CRC.
+   *
+   * @param out   stream to write to.
+   * @param chars chars in the block.
+   * @param data  the block's data.
+   * @throws IOException if out cannot be written
+   */
+  private static void writeBlock(DataOutputStream out, int chars, byte[] data)
+      throws IOException {
+    byte[] sizes = ByteBuffer.allocate(8).putInt(chars).putInt(data.length).array();
+    Checksum crc = Crc32c.create();
+    crc.update(sizes, 0, sizes.length);
+    crc.update(data, 0, data.length);
+    out.write(sizes);
+    out.writeInt((int) crc.getValue());
+    out.write(data);
+  }
+
+  //========\\
+  // DECODE \\
+  //========\\
+
+  /**
+   * Header fields, as read by readHeader().
+   */
+  private static class Header {
+    int kind;
+    int blockChars;
+    long length;
+    // Stored tree's bits, or null for a built-in tree or BLOCK_TREES.
+    ByteBuffer tree;
+    int treeBits;
+
+    /**
+     * @return number of blocks the text is split into
+     */
+    long blocks() {
+      return (length + blockChars - 1) / blockChars;
+    }
+
+    /**
+     * @param index index of a block.
+     * @return      chars in that block.
+     */
+    int blockChars(long index) {
+      return (int) Math.min(blockChars, length - index * blockChars);
+    }
+  }
+
+  /**
+   * Checks a container's header and every block's CRC and size, without
+   * decoding any chars or loading the tree.
+   *
+   * @param in bytes to check, starting at the buffer's position, which is
+   *           advanced past the container.
+   * @return   number of blocks.
+   * @throws IllegalArgumentException if in is not a valid container, or
+   *         any part of it fails its CRC
+   */
+  static long verify(ByteBuffer in) {
+    try {
+      Header header = readHeader(in);
+      long blocks = header.blocks();
+      for (long i = 0; i < blocks; i++) {
+        readBlock(in, i, header.blockChars(i));
+      }
+      return blocks;
+    }
+    catch (BufferUnderflowException e) {
+      throw new IllegalArgumentException("Container is truncated.");
+    }
+  }
+
+  /**
+   * Decodes a container written by encode() or encodeBlockTrees(). Each
+   * block's CRC is checked before it is decoded.
+   *
+   * @param in bytes to read, starting at the buffer's position, which is
+   *           advanced past the container.
+   * @return   the decoded text.
+   * @throws IllegalArgumentException if in is not a valid container, or
+   *         any part of it fails its CRC
+   * @throws IllegalStateException    if a block's bits do not decode to
+   *         its number of chars
+   */
+  static char[] decode(ByteBuffer in) {
+    Object event = HuffmanEvents.SINK.begin(HuffmanEvents.DECODE);
+    int start = in.position();
+    long decoded = 0;
+    try {
+      Header header = readHeader(in);
+      if (header.length > Integer.MAX_VALUE - 8) {
+        throw new IllegalArgumentException("Text of " + header.length
+            + " chars is too long for an array.");
+      }
+      char[] text = new char[(int) header.length];
+      long blocks = header.blocks();
+      if (header.kind == BLOCK_TREES) {
+        for (long i = 0; i < blocks; i++) {
+          int chars = header.blockChars(i);
+          ByteBuffer data = readBlock(in, i, chars);
+          char[] block = HuffmanBlock.decode(data);
+          if (block.length != chars || data.hasRemaining()) {
+            throw new IllegalArgumentException("Block " + i + " does not match its size.");
+          }
+          System.arraycopy(block, 0, text, (int) (i * header.blockChars), chars);
+          decoded += chars;
+        }
+        return text;
+      }
+
+      TableDecoder table = tree(header).decoder();
+      int pos = 0;
+      for (long i = 0; i < blocks; i++) {
+        int chars = header.blockChars(i);
+        ByteBuffer data = readBlock(in, i, chars);
+        BitReader bits = new BitReader(data, 8L * data.remaining());
+        for (int end = pos + chars; pos < end; pos++) {
+          int c = table.decode(bits);
+          if (c < 0) {
+            throw new IllegalStateException("Ran out of bits during decode.");
+          }
+          text[pos] = (char) c;
+        }
+        // Anything past the last char must be padding.
+        if (bits.remaining() >= 8) {
+          throw new IllegalStateException("Block has bits left over.");
+        }
+        decoded = pos;
+      }
+      return text;
+    }
+    catch (BufferUnderflowException | NoSuchElementException e) {
+      throw new IllegalArgumentException("Container is truncated.");
+    }
+    finally {
+      HuffmanEvents.SINK.commit(event, decoded, 8L * (in.position() - start));
+    }
+  }
+
+  /**
+   * Reads and checks the header.
+   *
+   * @param in bytes to read, advanced past the header.
+   * @return   the header's fields.
+   * @throws IllegalArgumentException if the header is invalid or fails
+   *         its CRC
+   */
+  private static Header readHeader(ByteBuffer in) {
+    int start = in.position();
+    if (in.getInt() != MAGIC) {
+      throw new IllegalArgumentException("Not a Huffman container.");
+    }
+    int version = in.get();
+    if (version != VERSION) {
+      throw new IllegalArgumentException("Unknown container version " + version + ".");
+    }
+    Header header = new Header();
+    header.kind = in.get();
+    if (header.kind < STD_TREE || header.kind > BLOCK_TREES) {
+      throw new IllegalArgumentException("Unknown tree kind " + header.kind + ".");
+    }
+    header.blockChars = in.getInt();
+    header.length = in.getLong();
+    if (header.blockChars <= 0 || header.length < 0) {
+      throw new IllegalArgumentException("Bad block size " + header.blockChars
+          + " or length " + header.length + ".");
+    }
+    if (header.kind == CODE_LENGTHS || header.kind == NODES) {
+      header.treeBits = in.getInt();
+      if (header.treeBits < 0) {
+        throw new IllegalArgumentException("Bad tree size " + header.treeBits + ".");
+      }
+      header.tree = slice(in, (int) ((header.treeBits + 7L) >>> 3));
+    }
+    int crc = crc(in, start, in.position());
+    if (in.getInt() != crc) {
+      throw new IllegalArgumentException("Container header fails its CRC.");
+    }
+    // Anyone can write a CRC, so the length is checked against the bytes
+    //   there are before anything is allocated for it: every char takes
+    //   at least a bit, and every block its header.
+    if (header.length > 8L * in.remaining()
+        || header.blocks() > in.remaining() / BLOCK_HEADER_BYTES) {
+      throw new IllegalArgumentException("Container is too short for "
+          + header.length + " chars.");
+    }
+    return header;
+  }
+
+  /**
+   * Loads the tree a header names or holds.
+   *
+   * @param header header of a container with one tree.
+   * @return       the tree.
+   * @throws IllegalArgumentException if the stored tree is invalid
+   */
+  private static HuffmanTree tree(Header header) {
+    if (header.kind == STD_TREE || header.kind == TEST_TREE) {
+      return HuffmanTree.builtInTree(header.kind == STD_TREE);
+    }
+    BitReader bits = new BitReader(header.tree, header.treeBits);
+    HuffmanTree tree = header.kind == CODE_LENGTHS ? HuffmanTree.fromCodeLengths(bits)
+                                                   : HuffmanTree.fromWideBitRep(bits);
+    if (bits.hasNext() || !tree.isValid()) {
+      throw new IllegalArgumentException("Stored tree is invalid.");
+    }
+    return tree;
+  }
+
+  /**
+   * Reads and checks one block's header and CRC.
+   *
+   * @param in    bytes to read, advanced past the block.
+   * @param index index of the block, for messages.
+   * @param chars chars the block should hold.
+   * @return      the block's data.
+   * @throws IllegalArgumentException if the block is the wrong size or
+   *         fails its CRC
+   */
+  private static ByteBuffer readBlock(ByteBuffer in, long index, int chars) {
+    int start = in.position();
+    int blockChars = in.getInt();
+    int bytes = in.getInt();
+    int expected = in.getInt();
+    if (blockChars != chars || bytes < 0) {
+      throw new IllegalArgumentException("Block " + index + " has " + blockChars
+          + " chars, not " + chars + ".");
+    }
+    ByteBuffer data = slice(in, bytes);
+    Checksum crc = Crc32c.create();
+    update(crc, in, start, start + 8);
+    update(crc, in, start + BLOCK_HEADER_BYTES, in.position());
+    if ((int) crc.getValue() != expected) {
+      throw new IllegalArgumentException("Block " + index + " fails its CRC.");
+    }
+    return data;
+  }
+
+  /**
+   * @param in    bytes to read, advanced past the slice.
+   * @param bytes length of the slice.
+   * @return      the next bytes of in, sharing its content.
+   * @throws BufferUnderflowException if in has fewer bytes left
+   */
+  private static ByteBuffer slice(ByteBuffer in, int bytes) {
+    if (bytes > in.remaining()) {
+      throw new BufferUnderflowException();
+    }
+    ByteBuffer slice = in.slice();
+    slice.limit(bytes);
+    in.position(in.position() + bytes);
+    return slice;
+  }
+
+  /**
+   * @param buf  bytes to check.
+   * @param from index of the first byte.
+   * @param to   one past the index of the last byte.
+   * @return     CRC-32C of those bytes.
+   */
+  private static int crc(ByteBuffer buf, int from, int to) {
+    Checksum crc = Crc32c.create();
+    update(crc, buf, from, to);
+    return (int) crc.getValue();
+  }
+
+  /**
+   * Adds bytes of a buffer to a checksum, without moving its position.
+   *
+   * @param crc  checksum to add to.
+   * @param buf  bytes to add.
+   * @param from index of the first byte.
+   * @param to   one past the index of the last byte.
+   */
+  private static void update(Checksum crc, ByteBuffer buf, int from, int to) {
+    if (buf.hasArray()) {
+      crc.update(buf.array(), buf.arrayOffset() + from, to - from);
+      return;
+    }
+    byte[] bytes = new byte[to - from];
+    ByteBuffer copy = buf.duplicate();
+    copy.position(from);
+    copy.get(bytes);
+    crc.update(bytes, 0, bytes.length);
+  }
+}
@@ -0,0 +1,258 @@
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+/**
+ * Encodes chars straight into a caller's ByteBuffer, allocating nothing
+ * once constructed: no boxed chars, Strings or growing buffers, and no
+ * copy at the end. Meant for encoding under load, with one encoder per
+ * thread (an encoder is not thread-safe) reused for text after text.
+ *
+ * Bits are packed most significant first, as by BitWriter, so the bytes
+ * written decode with a BitReader like any other encoded text. Encoding
+ * can stop when the buffer fills and resume with the same encoder once
+ * it has been drained:
+ *
+ *   encoder.reset();
+ *   while (off < end) {
+ *     encoder.encode(text, off, end - off, dst);
+ *     off += encoder.consumed();
+ *     if (!dst.hasRemaining()) drain(dst);
+ *   }
+ *   while (!encoder.finish(dst)) drain(dst);
+ *
+ * after which encoder.bitLength() is the number of bits written.
+ */
+final class HuffmanEncoder {
+  /**
+   * Code length bits in each table entry, under the code.
+   */
+  private final static int LENGTH_BITS = 6;
+
+  /**
+   * Code and length of each char, as code << LENGTH_BITS | length, or 0
+   * for chars with no code. Shared by encoders of the same codes.
+   */
+  private final long[] table;
+
+  /**
+   * Bits encoded but not yet written, right-aligned in the low pending
+   * bits. Higher bits are left over and ignored.
+   */
+  private long acc = 0;
+  private int pending = 0;
+
+  /**
+   * Bits encoded since the last reset().
+   */
+  private long bitLength = 0;
+
+  /**
+   * Chars taken by the last encode().
+   */
+  private int consumed = 0;
+
+  /**
+   * Constructs an encoder for a codebook's codes.
+   *
+   * @param codes code for each char.
+   */
+  HuffmanEncoder(HuffmanCodebook codes) {
+    this(table(codes));
+  }
+
+  /**
+   * Constructs an encoder sharing a table made by table(), so encoders
+   * for many threads need only one.
+   *
+   * @param table code and length of each char.
+   */
+  HuffmanEncoder(long[] table) {
+    this.table = table;
+  }
+
+  /**
+   * Flattens a codebook into one entry per char, escaped chars included,
+   * so encoding a char is a single array read.
+   *
+   * @param codes code for each char.
+   * @return      table for HuffmanEncoder(long[]).
+   */
+  static long[] table(HuffmanCodebook codes) {
+    int size = codes.hasEscape() ? HuffmanTree.ALPHABET_SIZE
+                                 : Math.min(codes.size(), HuffmanTree.ALPHABET_SIZE);
+    long[] table = new long[size];
+    for (int c = 0; c < size; c++) {
+      int len = codes.length(c);
+      if (len > 0) {
+        table[c] = (codes.code(c) & 0xFFFFFFFFL) << LENGTH_BITS | len;
+      }
+    }
+    return table;
+  }
+
+  /**
+   * Starts a new text: forgets any bits not yet written by finish().
+   */
+  void reset() {
+    pending = 0;
+    bitLength = 0;
+    consumed = 0;
+  }
+
+  /**
+   * Encodes chars into dst, from its position on, until they are all
+   * encoded or dst is full. Up to 63 bits may be held back until more
+   * chars fill their last byte, or until finish().
+   *
+   * @param src text to encode.
+   * @param off index of the first char to encode.
+   * @param len number of chars to encode.
+   * @param dst buffer to write to, advanced past the bytes written.
+   * @return    number of bits encoded; see consumed() for the number of
+   *            chars.
+   * @throws IllegalArgumentException if a char has no code. The chars
+   *         before it are encoded, and counted by consumed().
+   */
+  long encode(char[] src, int off, int len, ByteBuffer dst) {
+    if (off < 0 || len < 0 || off > src.length - len) {
+      throw new IndexOutOfBoundsException("Range " + off + " + " + len
+          + " out of " + src.length + " chars.");
+    }
+    Object event = HuffmanEvents.SINK.begin(HuffmanEvents.ENCODE);
+    boolean bigEndian = dst.order() == ByteOrder.BIG_ENDIAN;
+    long start = bitLength;
+    int i = off;
+    int end = off + len;
+    try {
+      for (; i < end; i++) {
+        if (pending >= 32 && !flushInt(dst, bigEndian)) break;
+        add(src[i], i);
+      }
+    }
+    finally {
+      flushBytes(dst);
+      consumed = i - off;
+      HuffmanEvents.SINK.commit(event, consumed, bitLength - start);
+    }
+    return bitLength - start;
+  }
+
+  /**
+   * Encodes chars into dst like encode(char[], int, int, ByteBuffer),
+   * from any CharSequence, such as a String or StringBuilder.
+   *
+   * @param src text to encode.
+   * @param off index of the first char to encode.
+   * @param len number of chars to encode.
+   * @param dst buffer to write to, advanced past the bytes written.
+   * @return    number of bits encoded; see consumed() for the number of
+   *            chars.
+   * @throws IllegalArgumentException if a char has no code. The chars
+   *         before it are encoded, and counted by consumed().
+   */
+  long encode(CharSequence src, int off, int len, ByteBuffer dst) {
+    if (off < 0 || len < 0 || off > src.length() - len) {
+      throw new IndexOutOfBoundsException("Range " + off + " + " + len
+          + " out of " + src.length() + " chars.");
+    }
+    Object event = HuffmanEvents.SINK.begin(HuffmanEvents.ENCODE);
+    boolean bigEndian = dst.order() == ByteOrder.BIG_ENDIAN;
+    long start = bitLength;
+    int i = off;
+    int end = off + len;
+    try {
+      for (; i < end; i++) {
+        if (pending >= 32 && !flushInt(dst, bigEndian)) break;
+        add(src.charAt(i), i);
+      }
+    }
+    finally {
+      flushBytes(dst);
+      consumed = i - off;
+      HuffmanEvents.SINK.commit(event, consumed, bitLength - start);
+    }
+    return bitLength - start;
+  }
+
+  /**
+   * Adds one char's code to the bits not yet written. There must be
+   * fewer than 32 of those.
+   *
+   * @param c     char to encode.
+   * @param index index of c, for the message if it has no code.
+   */
+  private void add(char c, int index) {
+    long entry = c < table.length ? table[c] : 0;
+    int len = (int) entry & ((1 << LENGTH_BITS) - 1);
+    if (len == 0) {
+      throw new IllegalArgumentException("Char " + (int) c + " at index " + index
+                                       + " has no code.");
+    }
+    acc = acc << len | entry >>> LENGTH_BITS;
+    pending += len;
+    bitLength += len;
+  }
+
+  /**
+   * Writes the oldest 32 bits not yet written, or as many whole bytes of
+   * them as fit.
+   *
+   * @param dst       buffer to write to.
+   * @param bigEndian true if dst writes ints most significant byte first.
+   * @return          true if fewer than 32 bits are left unwritten
+   */
+  private boolean flushInt(ByteBuffer dst, boolean bigEndian) {
+    if (dst.remaining() >= 4) {
+      int bits = (int) (acc >>> (pending - 32));
+      dst.putInt(bigEndian ? bits : Integer.reverseBytes(bits));
+      pending -= 32;
+      return true;
+    }
+    flushBytes(dst);
+    return pending < 32;
+  }
+
+  /**
+   * Writes as many whole bytes of the bits not yet written as fit.
+   *
+   * @param dst buffer to write to.
+   */
+  private void flushBytes(ByteBuffer dst) {
+    while (pending >= 8 && dst.hasRemaining()) {
+      pending -= 8;
+      dst.put((byte) (acc >>> pending));
+    }
+  }
+
+  /**
+   * Writes every bit not yet written, the last byte padded with 0s.
+   * Call reset() before encoding another text.
+   *
+   * @param dst buffer to write to, advanced past the bytes written.
+   * @return    true if all bits are written, false if dst filled first
+   *            (call again with more room)
+   */
+  boolean finish(ByteBuffer dst) {
+    flushBytes(dst);
+    if (pending > 0 && pending < 8 && dst.hasRemaining()) {
+      dst.put((byte) (acc << (8 - pending)));
+      pending = 0;
+    }
+    return pending == 0;
+  }
+
+  /**
+   * @return chars taken by the last encode(), to resume from
+   */
+  int consumed() {
+    return consumed;
+  }
+
+  /**
+   * @return bits encoded since the last reset(), whether written yet or
+   *         not
+   */
+  long bitLength() {
+    return bitLength;
+  }
+}
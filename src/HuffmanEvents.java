@@ -0,0 +1,60 @@
+/**
+ * Hooks for tracing tree builds, encodes and decodes, for instance as
+ * JDK Flight Recorder events. This class does nothing, and costs no more
+ * than a call returning null.
+ *
+ * JFR needs Java 11, while these sources stay on Java 8, so the JFR
+ * version, JfrHuffmanEvents, lives in the jfr directory and is built by
+ * the core module's jfr profile (on by default on JDK 11 or later). It is
+ * used instead of this class when it can be loaded.
+ */
+class HuffmanEvents {
+  /**
+   * Kinds of event.
+   */
+  final static int BUILD = 0;
+  final static int ENCODE = 1;
+  final static int DECODE = 2;
+
+  /**
+   * Hooks in use: the JFR version if it loads, else this class.
+   */
+  final static HuffmanEvents SINK = load();
+
+  /**
+   * Starts an event, just before the work it covers.
+   *
+   * @param kind BUILD, ENCODE or DECODE.
+   * @return     the event, to pass to commit(), or null if events of
+   *             this kind are not being recorded.
+   */
+  Object begin(int kind) {
+    return null;
+  }
+
+  /**
+   * Ends and records an event started by begin(). Called even if the
+   * work failed, with what was done before it did, so failures show up
+   * too.
+   *
+   * @param event the event, or null to do nothing.
+   * @param chars chars counted, encoded or decoded.
+   * @param bits  bits the chars were, or would be, encoded in.
+   */
+  void commit(Object event, long chars, long bits) {
+  }
+
+  /**
+   * @return JfrHuffmanEvents if it is on the classpath and this JVM has
+   *         JFR, otherwise a do-nothing HuffmanEvents
+   */
+  private static HuffmanEvents load() {
+    try {
+      return (HuffmanEvents) Class.forName("JfrHuffmanEvents")
+          .getDeclaredConstructor().newInstance();
+    }
+    catch (ReflectiveOperationException | LinkageError e) {
+      return new HuffmanEvents();
+    }
+  }
+}
@@ -0,0 +1,63 @@
+/**
+ * The innermost loop over chars, counting them into a histogram (see
+ * HuffmanTree.countChars()), kept apart so it can be swapped for a SIMD
+ * version. This class has the plain Java loop, which any JVM runs.
+ *
+ * The Vector API version, in VectorHuffmanKernels, needs Java 17 and the
+ * incubating jdk.incubator.vector module, while these sources stay on
+ * Java 8. So it lives in the vector directory, built by the core
+ * module's vector profile (on by default on JDK 17 or later), and is
+ * used instead of this class when it can be loaded: when the JVM was
+ * started with
+ *   --add-modules jdk.incubator.vector
+ * and has vectors of at least 256 bits (AVX2 or better). Run with
+ * -Dhuffman.vector=false to keep the plain loop anyway. Either way the
+ * counts are exactly the same.
+ *
+ * The vector loop pays off on long, repetitive text, where the plain
+ * loop keeps adding to the same few counts; on varied text such as
+ * English prose the two are about as fast.
+ */
+class HuffmanKernels {
+  /**
+   * The plain Java loop.
+   */
+  final static HuffmanKernels SCALAR = new HuffmanKernels();
+
+  /**
+   * Loop in use: the Vector API version if it loads, else SCALAR.
+   */
+  final static HuffmanKernels KERNELS = load();
+
+  /**
+   * Adds the chars of part of an array to a histogram.
+   *
+   * @param chars  array to count chars from.
+   * @param off    index of first char to count.
+   * @param len    number of chars to count.
+   * @param counts histogram to add to, HuffmanTree.ALPHABET_SIZE long.
+   */
+  void countChars(char[] chars, int off, int len, long[] counts) {
+    for (int i = off; i < off + len; i++) {
+      counts[chars[i]]++;
+    }
+  }
+
+  /**
+   * @return VectorHuffmanKernels if it is on the classpath, its module is
+   *         loaded and this CPU has wide enough vectors, otherwise SCALAR
+   */
+  private static HuffmanKernels load() {
+    if ("false".equals(System.getProperty("huffman.vector"))) {
+      return SCALAR;
+    }
+    try {
+      return (HuffmanKernels) Class.forName("VectorHuffmanKernels")
+          .getDeclaredConstructor().newInstance();
+    }
+    catch (ReflectiveOperationException | LinkageError e) {
+      // Not built, no jdk.incubator.vector, or vectors too narrow.
+      return SCALAR;
+    }
+  }
+}
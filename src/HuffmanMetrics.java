@@ -0,0 +1,152 @@
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Running totals of the work done by a codec: how many chars and bytes
+ * went in and out of builds, encodes and decodes, and how long they
+ * took. Safe for use from any number of threads; the totals are
+ * LongAdders, so threads of a batch (see HuffmanCodec.encodeAll()) do
+ * not contend on one counter.
+ */
+final class HuffmanMetrics {
+  private final LongAdder builds = new LongAdder();
+  private final LongAdder buildChars = new LongAdder();
+  private final LongAdder buildNanos = new LongAdder();
+
+  private final LongAdder encodes = new LongAdder();
+  private final LongAdder encodeChars = new LongAdder();
+  private final LongAdder encodeBytes = new LongAdder();
+  private final LongAdder encodeNanos = new LongAdder();
+
+  private final LongAdder decodes = new LongAdder();
+  private final LongAdder decodeBytes = new LongAdder();
+  private final LongAdder decodeChars = new LongAdder();
+  private final LongAdder decodeNanos = new LongAdder();
+
+  /**
+   * Records one tree build.
+   *
+   * @param chars chars counted for the tree.
+   * @param nanos time taken.
+   */
+  void recordBuild(long chars, long nanos) {
+    builds.increment();
+    buildChars.add(chars);
+    buildNanos.add(nanos);
+  }
+
+  /**
+   * Records one encode.
+   *
+   * @param chars chars encoded.
+   * @param bytes bytes written.
+   * @param nanos time taken.
+   */
+  void recordEncode(long chars, long bytes, long nanos) {
+    encodes.increment();
+    encodeChars.add(chars);
+    encodeBytes.add(bytes);
+    encodeNanos.add(nanos);
+  }
+
+  /**
+   * Records one decode.
+   *
+   * @param bytes bytes read.
+   * @param chars chars decoded.
+   * @param nanos time taken.
+   */
+  void recordDecode(long bytes, long chars, long nanos) {
+    decodes.increment();
+    decodeBytes.add(bytes);
+    decodeChars.add(chars);
+    decodeNanos.add(nanos);
+  }
+
+  /**
+   * @return number of trees built
+   */
+  long builds() {
+    return builds.sum();
+  }
+
+  /**
+   * @return number of encode calls
+   */
+  long encodes() {
+    return encodes.sum();
+  }
+
+  /**
+   * @return chars encoded
+   */
+  long encodeChars() {
+    return encodeChars.sum();
+  }
+
+  /**
+   * @return bytes written by encodes
+   */
+  long encodeBytes() {
+    return encodeBytes.sum();
+  }
+
+  /**
+   * @return number of decode calls
+   */
+  long decodes() {
+    return decodes.sum();
+  }
+
+  /**
+   * @return bytes read by decodes
+   */
+  long decodeBytes() {
+    return decodeBytes.sum();
+  }
+
+  /**
+   * @return chars decoded
+   */
+  long decodeChars() {
+    return decodeChars.sum();
+  }
+
+  /**
+   * @return average build time per char counted, or 0 if none
+   */
+  double buildNanosPerChar() {
+    return perChar(buildNanos.sum(), buildChars.sum());
+  }
+
+  /**
+   * @return average encode time per char, or 0 if none
+   */
+  double encodeNanosPerChar() {
+    return perChar(encodeNanos.sum(), encodeChars.sum());
+  }
+
+  /**
+   * @return average decode time per char, or 0 if none
+   */
+  double decodeNanosPerChar() {
+    return perChar(decodeNanos.sum(), decodeChars.sum());
+  }
+
+  /**
+   * @param nanos total time.
+   * @param chars total chars.
+   * @return      time per char, or 0 if there were no chars.
+   */
+  private static double perChar(long nanos, long chars) {
+    return chars == 0 ? 0 : (double) nanos / chars;
+  }
+
+  @Override
+  public String toString() {
+    return String.format("builds=%d (%.2f ns/char), encodes=%d (%d chars -> %d bytes, "
+        + "%.2f ns/char), decodes=%d (%d bytes -> %d chars, %.2f ns/char)",
+        builds(), buildNanosPerChar(),
+        encodes(), encodeChars(), encodeBytes(), encodeNanosPerChar(),
+        decodes(), decodeBytes(), decodeChars(), decodeNanosPerChar());
+  }
+}
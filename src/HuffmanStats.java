@@ -0,0 +1,139 @@
+/**
+ * How well a Huffman Tree fits the text it was built from, as numbers
+ * rather than printed text (see HuffmanTree.getStats()). A snapshot:
+ * it never changes once made.
+ */
+final class HuffmanStats {
+  /**
+   * Bits per char of the text before encoding: Java chars are UTF-16.
+   */
+  final static int CHAR_BITS = 16;
+
+  private final int uniqueChars;
+  private final long totalChars;
+  private final double entropy;
+  private final long encodedBits;
+  private final int maxCodeLength;
+  private final long headerBits;
+  private final long buildNanos;
+
+  /**
+   * Constructs stats for a tree.
+   *
+   * @param uniqueChars   chars with codes, counting any gaps filled in.
+   * @param totalChars    chars counted.
+   * @param entropy       Shannon entropy of the counts, in bits per char.
+   * @param encodedBits   bits to encode the counted chars with the tree.
+   * @param maxCodeLength longest code in the tree.
+   * @param headerBits    bits to store the tree itself.
+   * @param buildNanos    time taken to build the tree, or -1 if unknown.
+   */
+  HuffmanStats(int uniqueChars, long totalChars, double entropy, long encodedBits,
+               int maxCodeLength, long headerBits, long buildNanos) {
+    this.uniqueChars = uniqueChars;
+    this.totalChars = totalChars;
+    this.entropy = entropy;
+    this.encodedBits = encodedBits;
+    this.maxCodeLength = maxCodeLength;
+    this.headerBits = headerBits;
+    this.buildNanos = buildNanos;
+  }
+
+  /**
+   * Computes the Shannon entropy of a histogram: the fewest bits per
+   * char any code for single chars could average on the counted text.
+   *
+   * @param counts frequency of each char.
+   * @return       entropy in bits per char, or 0 if nothing was counted.
+   */
+  static double entropy(long[] counts) {
+    long total = 0;
+    for (long count : counts) {
+      total += count;
+    }
+    double bits = 0;
+    for (long count : counts) {
+      if (count > 0) {
+        double p = (double) count / total;
+        bits -= p * Math.log(p);
+      }
+    }
+    return total == 0 ? 0 : bits / Math.log(2);
+  }
+
+  /**
+   * @return chars with codes, counting any gaps filled in (but not an
+   *         escape code)
+   */
+  int uniqueChars() {
+    return uniqueChars;
+  }
+
+  /**
+   * @return chars counted
+   */
+  long totalChars() {
+    return totalChars;
+  }
+
+  /**
+   * @return Shannon entropy of the counts, in bits per char
+   */
+  double entropy() {
+    return entropy;
+  }
+
+  /**
+   * @return average code length over the counted chars, in bits per char
+   *         (never less than entropy())
+   */
+  double averageCodeLength() {
+    return totalChars == 0 ? 0 : (double) encodedBits / totalChars;
+  }
+
+  /**
+   * @return bits to encode the counted chars, without the header
+   */
+  long encodedBits() {
+    return encodedBits;
+  }
+
+  /**
+   * @return longest code length in bits
+   */
+  int maxCodeLength() {
+    return maxCodeLength;
+  }
+
+  /**
+   * @return bits to store the tree, as code lengths if canonical or else
+   *         node by node
+   */
+  long headerBits() {
+    return headerBits;
+  }
+
+  /**
+   * @return size of the counted chars as CHAR_BITS-bit chars, over their
+   *         encoded size with the header: 2.0 means half the size
+   */
+  double compressionRatio() {
+    long bits = encodedBits + headerBits;
+    return bits == 0 ? 0 : (double) totalChars * CHAR_BITS / bits;
+  }
+
+  /**
+   * @return time taken to build the tree, counting included, or -1 if
+   *         it was not built from text
+   */
+  long buildNanos() {
+    return buildNanos;
+  }
+
+  /**
+   * @return build time per char counted, or -1 if unknown
+   */
+  double buildNanosPerChar() {
+    return buildNanos < 0 || totalChars == 0 ? -1 : (double) buildNanos / totalChars;
+  }
+}
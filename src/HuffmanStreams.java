@@ -0,0 +1,256 @@
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.Reader;
+import java.io.Writer;
+import java.nio.charset.Charset;
+
+/**
+ * Streaming encode and decode, a buffer at a time, so memory use stays
+ * the same no matter how large the input is.
+ *
+ * Streamed bits are written in frames. Each frame is a 4-byte bit count
+ * followed by that many packed bits, and holds the codes for one buffer
+ * of chars, so a frame always ends on a whole code. A frame with a bit
+ * count of 0 marks the end of the stream.
+ */
+class HuffmanStreams {
+  /**
+   * Chars per buffer, and so the most chars per frame.
+   */
+  final static int BUFFER_CHARS = 1 << 16;
+
+  /**
+   * Largest frame accepted when decoding. Enough for a full buffer of
+   * the longest codes.
+   */
+  final static int MAX_FRAME_BITS = BUFFER_CHARS * HuffmanCodebook.MAX_CODE_LENGTH;
+
+  /**
+   * Charset for reading and writing text. Matches Scanner and
+   * PrintWriter, as used by Driver.fileChars() and Driver.writeFile().
+   */
+  final static Charset CHARSET = Charset.defaultCharset();
+
+  // Static methods only.
+  private HuffmanStreams() {
+  }
+
+  //=========================\\
+  // HISTOGRAM AND TREE PASS \\
+  //=========================\\
+
+  /**
+   * Counts the chars from a stream, a buffer at a time.
+   *
+   * @param in     text to count. Read to the end, but not closed.
+   * @param counts histogram to add to, HuffmanTree.ALPHABET_SIZE long.
+   * @return       number of chars counted.
+   * @throws IOException if in cannot be read
+   */
+  static long count(Reader in, long[] counts) throws IOException {
+    char[] buf = new char[BUFFER_CHARS];
+    long total = 0;
+    int n;
+    while ((n = in.read(buf)) != -1) {
+      HuffmanTree.countChars(buf, 0, n, counts);
+      total += n;
+    }
+    return total;
+  }
+
+  /**
+   * Builds a Huffman Tree from the chars of a file without reading it all
+   * into memory. This is the first pass of a two-pass encode.
+   *
+   * @param file   text file to base frequencies on.
+   * @param config options to build the tree with.
+   * @return       tree for the file's chars.
+   * @throws IOException if file cannot be read
+   */
+  static HuffmanTree buildTree(File file, HuffmanConfig config) throws IOException {
+    long[] counts = new long[HuffmanTree.ALPHABET_SIZE];
+    try (Reader in = new InputStreamReader(new FileInputStream(file), CHARSET)) {
+      count(in, counts);
+    }
+    return new HuffmanTree(counts, config);
+  }
+
+  //=================\\
+  // ENCODE / DECODE \\
+  //=================\\
+
+  /**
+   * Encodes a stream of text into frames of packed bits. Chars absent
+   * from the codebook are skipped, as in Driver.encode().
+   *
+   * @param codes code for each char.
+   * @param in    text to encode. Read to the end, but not closed.
+   * @param out   stream to write frames to. Flushed, but not closed.
+   * @return      number of chars read.
+   * @throws IOException if in cannot be read or out written
+   */
+  static long encode(HuffmanCodebook codes, Reader in, OutputStream out) throws IOException {
+    Object event = HuffmanEvents.SINK.begin(HuffmanEvents.ENCODE);
+    DataOutputStream data = new DataOutputStream(out);
+    char[] buf = new char[BUFFER_CHARS];
+    BitWriter bits = new BitWriter(BUFFER_CHARS);
+    long total = 0;
+    long totalBits = 0;
+    try {
+      int n;
+      while ((n = in.read(buf)) != -1) {
+        writeFrame(codes, buf, n, bits, data);
+        total += n;
+        totalBits += bits.bitLength();
+      }
+      data.writeInt(0); // End of stream.
+      data.flush();
+      return total;
+    }
+    finally {
+      HuffmanEvents.SINK.commit(event, total, totalBits);
+    }
+  }
+
+  /**
+   * Encodes one buffer of chars as a frame. Writes nothing if none of the
+   * chars have codes, since an empty frame would end the stream.
+   *
+   * @param codes code for each char.
+   * @param buf   chars to encode.
+   * @param n     number of chars in buf to encode, from the start.
+   * @param bits  scratch space for the frame's bits, reused between calls.
+   * @param out   stream to write the frame to.
+   * @throws IOException if out cannot be written
+   */
+  static void writeFrame(HuffmanCodebook codes, char[] buf, int n,
+                         BitWriter bits, DataOutputStream out) throws IOException {
+    bits.clear();
+    for (int i = 0; i < n; i++) {
+      int len = codes.length(buf[i]);
+      if (len > 0) {
+        bits.writeBits(codes.code(buf[i]), len);
+      }
+    }
+    if (bits.bitLength() > 0) {
+      out.writeInt((int) bits.bitLength());
+      bits.writeTo(out);
+    }
+  }
+
+  /**
+   * Encodes a text file in two passes: the first builds a tree from the
+   * file's own frequencies, the second encodes the file with it.
+   *
+   * @param file   text file to encode.
+   * @param out    stream to write frames to. Flushed, but not closed.
+   * @param config options to build the tree with.
+   * @return       the tree built, which is needed to decode the frames.
+   * @throws IOException if file cannot be read or out written
+   */
+  static HuffmanTree encodeTwoPass(File file, OutputStream out, HuffmanConfig config)
+      throws IOException {
+    HuffmanTree tree = buildTree(file, config);
+    try (Reader in = new InputStreamReader(new FileInputStream(file), CHARSET)) {
+      encode(tree.codebook(), in, out);
+    }
+    return tree;
+  }
+
+  /**
+   * Encodes a stream of text in a single pass with the standard tree, so
+   * no tree needs to be built or stored.
+   *
+   * @param in  text to encode. Read to the end, but not closed.
+   * @param out stream to write frames to. Flushed, but not closed.
+   * @return    number of chars read.
+   * @throws IOException if in cannot be read or out written
+   */
+  static long encodeFixedTree(Reader in, OutputStream out) throws IOException {
+    return encode(HuffmanTree.builtInTree(true).codebook(), in, out);
+  }
+
+  /**
+   * Decodes frames of packed bits back into text.
+   *
+   * @param tree tree the frames were encoded with.
+   * @param in   frames to decode. Read to the end frame, but not closed.
+   * @param out  text output. Flushed, but not closed.
+   * @return     number of chars decoded.
+   * @throws IOException if in cannot be read or out written, or in ends
+   *         early or holds a frame that does not decode.
+   */
+  static long decode(HuffmanTree tree, InputStream in, Writer out) throws IOException {
+    Object event = HuffmanEvents.SINK.begin(HuffmanEvents.DECODE);
+    DataInputStream data = new DataInputStream(in);
+    TableDecoder table = tree.decoder();
+    byte[] frame = new byte[0];
+    char[] buf = new char[BUFFER_CHARS];
+    int used = 0;
+    long total = 0;
+    long totalBits = 0;
+
+    try {
+      while (true) {
+        int bitCount;
+        try {
+          bitCount = data.readInt();
+        }
+        catch (EOFException eofe) {
+          throw new IOException("Stream ended without an end frame.");
+        }
+        if (bitCount == 0) break;
+        if (bitCount < 0 || bitCount > MAX_FRAME_BITS) {
+          throw new IOException("Bad frame size: " + bitCount + " bits.");
+        }
+
+        int byteCount = (bitCount + 7) >>> 3;
+        if (frame.length < byteCount) {
+          frame = new byte[byteCount];
+        }
+        data.readFully(frame, 0, byteCount);
+        totalBits += bitCount;
+
+        BitReader bits = new BitReader(frame, bitCount);
+        while (bits.hasNext()) {
+          buf[used++] = decodeChar(table, bits);
+          if (used == buf.length) {
+            out.write(buf, 0, used);
+            total += used;
+            used = 0;
+          }
+        }
+      }
+      out.write(buf, 0, used);
+      total += used;
+      out.flush();
+      return total;
+    }
+    finally {
+      HuffmanEvents.SINK.commit(event, total, totalBits);
+    }
+  }
+
+  /**
+   * Decodes one char of a frame.
+   *
+   * @param table decoder for the tree the frame was encoded with.
+   * @param bits  the frame's bits, advanced past the char.
+   * @return      decoded char.
+   * @throws IOException if the frame ends partway through a code
+   */
+  static char decodeChar(TableDecoder table, BitReader bits) throws IOException {
+    int c = table.decode(bits);
+    if (c < 0) {
+      throw new IOException("Frame ends partway through a code.");
+    }
+    return (char) c;
+  }
+}
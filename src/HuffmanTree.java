@@ -1,3 +1,4 @@
+import java.util.Arrays;
 import java.util.HashMap;
 import java.util.Map;
 import java.util.NoSuchElementException;
@@ -16,72 +17,518 @@ public class HuffmanTree {
   private final static String TEST_TREE_BIT_STR =
     "0010010000001001011000101100011101110000001011011100101101101101101100101100001";
   
-  private Map<Character,Integer> freqs;
-  // frequencies of chars used to create this tree
+  /**
+   * Number of possible chars; every char value has a histogram slot.
+   */
+  final static int ALPHABET_SIZE = Character.MAX_VALUE + 1;
   
-  private HuffmanNode root;
+  /**
+   * Bits of a symbol (a char, or HuffmanCodebook.ESCAPE) packed under
+   * its count in sort keys.
+   */
+  private final static int SYMBOL_BITS = 17;
+  private final static long SYMBOL_MASK = (1 << SYMBOL_BITS) - 1;
   
   /**
-   * Constructs Huffman Tree based on the frequencies of a set of chars.
+   * Chars filled in as gaps (see freqGapCheck()), in increasing order.
+   */
+  private final static int[] GAP_CHARS = gapChars();
+  
+  private int[] symbols;
+  // chars to put in this tree, in increasing order: those counted, plus
+  //   any gaps filled in
+  
+  private long[] freqs;
+  // frequency of each of the symbols, 0 for gaps
+  
+  // The tree itself, as flat arrays (see FlatTree). May be null for
+  //   canonical trees until first needed (see tree()).
+  private FlatTree tree;
+  
+  // Codes for each char. Set up front for canonical trees, otherwise
+  //   generated from the tree on first use.
+  private HuffmanCodebook codes;
+  
+  // True if codes were assigned canonically from code lengths.
+  private boolean canonical = false;
+  
+  // Built on first decode.
+  private TableDecoder decoder;
+  
+  // Longest code allowed when this tree was built, or 0 if built as a
+  //   tree of nodes (with no limit).
+  private int lengthLimit = 0;
+  
+  // Bits to encode the counted chars with the codes of the unlimited
+  //   tree, and with the length-limited codes actually used. Equal unless
+  //   the limit was needed.
+  private long unlimitedBits = 0;
+  private long limitedBits = 0;
+  
+  // True if chars not counted are encoded after an escape code (see
+  //   fromSample()).
+  private boolean escape = false;
+  
+  // Estimated share of encoded size lost by building this tree from a
+  //   sample rather than every char, or -1 if not built from a sample.
+  private double sampleLoss = -1;
+  
+  // Time taken to count chars and build, or -1 if not built from text.
+  private long buildNanos = -1;
+  
+  /**
+   * Constructs Huffman Tree based on the frequencies of a set of chars,
+   * with the default options (see HuffmanConfig.DEFAULT).
    * 
    * @param chars array to base frequencies on.
    */
   public HuffmanTree(char[] chars) {
-    genFrequencyMap(chars);
+    this(chars, HuffmanConfig.DEFAULT);
+  }
+  
+  /**
+   * Constructs Huffman Tree based on the frequencies of a set of chars.
+   * 
+   * @param chars  array to base frequencies on.
+   * @param config options to build the tree with.
+   */
+  HuffmanTree(char[] chars, HuffmanConfig config) {
+    Object event = HuffmanEvents.SINK.begin(HuffmanEvents.BUILD);
+    long start = System.nanoTime();
+    try {
+      genFrequencyMap(chars);
+      buildFromCounts(config);
+    }
+    finally {
+      built(event, start);
+    }
+  }
+  
+  /**
+   * Constructs Huffman Tree from an already-counted histogram, for
+   * instance one counted a buffer at a time from a stream.
+   * 
+   * @param counts frequency of each char, ALPHABET_SIZE long. Only the
+   *               chars counted are kept, not the histogram itself.
+   * @param config options to build the tree with.
+   */
+  HuffmanTree(long[] counts, HuffmanConfig config) {
+    this(CharCounts.of(counts), config, false);
+  }
+  
+  /**
+   * Constructs Huffman Tree from chars already counted, for instance to
+   * look the counts up in a TreeCache first.
+   * 
+   * @param counts chars to put in the tree, and their frequencies.
+   * @param config options to build the tree with.
+   */
+  HuffmanTree(CharCounts counts, HuffmanConfig config) {
+    this(counts, config, false);
+  }
+  
+  /**
+   * Constructs Huffman Tree from counted chars, optionally with an escape
+   * code for chars that were not counted.
+   * 
+   * @param counts chars to put in the tree, and their frequencies.
+   * @param config options to build the tree with.
+   * @param escape true to give chars with no count an escape code.
+   */
+  private HuffmanTree(CharCounts counts, HuffmanConfig config, boolean escape) {
+    Object event = HuffmanEvents.SINK.begin(HuffmanEvents.BUILD);
+    long start = System.nanoTime();
+    symbols = counts.chars;
+    freqs = counts.counts;
+    this.escape = escape;
+    try {
+      buildFromCounts(config);
+    }
+    finally {
+      built(event, start);
+    }
+  }
+  
+  /**
+   * Records the time taken to build this tree, and ends its build event,
+   * whether or not the build finished.
+   * 
+   * @param event build event from HuffmanEvents.begin(), or null.
+   * @param start System.nanoTime() when the build started.
+   */
+  private void built(Object event, long start) {
+    buildNanos = System.nanoTime() - start;
+    if (event != null) {
+      long chars = 0;
+      long bits = 0;
+      if (freqs != null) {
+        for (long count : freqs) {
+          chars += count;
+        }
+      }
+      try {
+        bits = isValid() ? encodedBits() : 0;
+      }
+      catch (IllegalArgumentException iae) {
+        // Codes too long for ints; the build itself still stands.
+      }
+      HuffmanEvents.SINK.commit(event, chars, bits);
+    }
+  }
+  
+  /**
+   * Builds a tree from a sample of a text, such as some blocks of a
+   * large file (see MappedHuffmanIO.sampleTree()). Chars the sample
+   * missed are encoded after an escape code (see HuffmanCodebook.ESCAPE),
+   * so the tree can still encode the whole text.
+   * 
+   * The sample is counted in two halves to estimate what sampling costs,
+   * for printStats(): the second half is encoded with a tree built from
+   * the first half alone, and compared to its own tree. The whole sample
+   * is twice the size of either half, so the estimate tends to err high,
+   * but it cannot see parts of the text that both halves missed.
+   * 
+   * @param first  frequency of each char in one half of the sample,
+   *               ALPHABET_SIZE long.
+   * @param second frequency of each char in the other half.
+   * @param config options to build the trees with.
+   * @return       canonical tree built from both halves.
+   */
+  static HuffmanTree fromSample(long[] first, long[] second, HuffmanConfig config) {
+    long[] both = new long[ALPHABET_SIZE];
+    for (int c = 0; c < ALPHABET_SIZE; c++) {
+      both[c] = first[c] + second[c];
+    }
+    HuffmanTree tree = new HuffmanTree(CharCounts.of(both), config, true);
     
+    HuffmanTree own = new HuffmanTree(CharCounts.of(second), config, true);
+    HuffmanTree other = new HuffmanTree(CharCounts.of(first), config, true);
+    tree.sampleLoss = 0;
+    if (own.isValid() && other.isValid()) {
+      long ownBits = own.encodedBits(second);
+      long otherBits = other.encodedBits(second);
+      // The other tree can come out ahead by a few bits, if the escape
+      //   code happens to cost the own tree more.
+      if (ownBits > 0 && otherBits > ownBits) {
+        tree.sampleLoss = (double) (otherBits - ownBits) / ownBits;
+      }
+    }
+    return tree;
+  }
+  
+  /**
+   * @return bits to encode the chars this tree was built from with its
+   *         codes
+   */
+  private long encodedBits() {
+    HuffmanCodebook book = codebook();
+    long bits = 0;
+    for (int i = 0; i < symbols.length; i++) {
+      bits += freqs[i] * book.length(symbols[i]);
+    }
+    return bits;
+  }
+  
+  /**
+   * @param text frequency of each char of a text.
+   * @return     bits to encode the text with this tree's codes. Chars
+   *             with no code count as 0 bits.
+   */
+  private long encodedBits(long[] text) {
+    HuffmanCodebook book = codebook();
+    long bits = 0;
+    for (int c = 0; c < text.length; c++) {
+      if (text[c] > 0) bits += text[c] * book.length(c);
+    }
+    return bits;
+  }
+  
+  /**
+   * Builds the tree and its codes from this tree's chars and frequencies.
+   * 
+   * @param config options to build with.
+   */
+  private void buildFromCounts(HuffmanConfig config) {
     // If option is set, don't just make do with the characters provided,
     //   also include certain absent characters, before converting to tree.
-    if (Driver.FILL_GAPS) freqGapCheck();
+    if (config.fillGaps()) freqGapCheck();
+    // Nothing left to escape if every char is in.
+    if (symbols.length == ALPHABET_SIZE) escape = false;
     
-    mapToTree();
+    // If option is set, skip the tree and go straight to the code
+    //   lengths, with canonical codes assigned from them. Codes must fit
+    //   in an int even with no limit set. An escape code must also leave
+    //   room for the char after it, so trees with one are always canonical.
+    int n = symbols.length + (escape ? 1 : 0);
+    if ((config.canonicalCodes() || escape) && n >= 2) {
+      int limit = config.maxCodeLength();
+      if (escape) limit = Math.min(limit, HuffmanCodebook.MAX_ESCAPE_LENGTH);
+      buildCodeLengths(limit);
+    }
+    else {
+      mapToTree();
+    }
   }
   
   // Private constructor! Can only be used by internal methods, for
   //   instance stdTree().
-  private HuffmanTree(HuffmanNode root) {
-    this.root = root;
+  private HuffmanTree(FlatTree tree) {
+    this.tree = tree;
+  }
+  
+  // Private constructor for canonical trees. The tree is only built if
+  //   something needs it.
+  private HuffmanTree(HuffmanCodebook codes) {
+    this.codes = codes;
+    this.canonical = true;
+    this.escape = codes.hasEscape();
+  }
+  
+  /**
+   * Loads a canonical tree from a code length header, as written by
+   * codeLengthRep().
+   * 
+   * @param bits the header bits, advanced past the header
+   * @return     canonical tree with those code lengths
+   * @throws NoSuchElementException   if bits run out partway through
+   * @throws IllegalArgumentException if the lengths are invalid
+   */
+  static HuffmanTree fromCodeLengths(BitReader bits) {
+    HuffmanCodebook book = HuffmanCodebook.canonical(HuffmanCodebook.readLengths(bits));
+    if (book.count() < 2) {
+      throw new IllegalArgumentException("Tree needs at least 2 codes.");
+    }
+    return new HuffmanTree(book);
   }
   
   public void printStats() {
     // TODO: Add frequency statistics/other calculations.
-	System.out.println("Total Unique Characters: " + freqs.size());
-	int sum = 0;
-	for(Character key: freqs.keySet()) {
-		if(freqs.get(key) > 0) sum += freqs.get(key);
+	System.out.println("Total Unique Characters: " + symbols.length);
+	long sum = 0;
+	for (long count : freqs) {
+		sum += count;
 	}
 	System.out.println("Total Characters: " + sum);
+	if (codes != null) {
+	  System.out.println("Longest Code: " + codes.maxLength() + " bits"
+	      + (lengthLimit > 0 ? " (limit " + lengthLimit + ")" : ""));
+	}
+	if (limitedBits > unlimitedBits) {
+	  System.out.printf("Length Limit Cost: %d bits (+%.3f%%)%n",
+	      limitedBits - unlimitedBits, 100.0 * (limitedBits - unlimitedBits) / unlimitedBits);
+	}
+	if (escape) {
+	  System.out.println("Escape Code: " + codes.length(HuffmanCodebook.ESCAPE)
+	      + " bits + " + HuffmanCodebook.ESCAPED_CHAR_BITS + " bit char");
+	}
+	if (sampleLoss >= 0) {
+	  System.out.printf("Sampling Cost: about +%.3f%% (estimated)%n", 100 * sampleLoss);
+	}
+	HuffmanStats stats = getStats();
+	if (stats != null && stats.totalChars() > 0) {
+	  System.out.printf("Entropy: %.4f bits/char%n", stats.entropy());
+	  System.out.printf("Average Code Length: %.4f bits/char (+%.3f%% over entropy)%n",
+	      stats.averageCodeLength(),
+	      100 * (stats.averageCodeLength() - stats.entropy()) / stats.entropy());
+	  System.out.println("Tree Header: " + stats.headerBits() + " bits");
+	  System.out.printf("Compression Ratio: %.3f (vs %d-bit chars, with header)%n",
+	      stats.compressionRatio(), HuffmanStats.CHAR_BITS);
+	  System.out.printf("Build Time: %.2f ns/char%n", stats.buildNanosPerChar());
+	}
   }
   
-  private void getStats() {
-	  
+  /**
+   * Returns the frequencies of this tree's chars as a map, for display.
+   * Chars filled in as gaps are included with frequency 0. Built on
+   * request; the tree itself is built from primitive arrays.
+   * 
+   * @return mappings from chars in this tree to their frequencies,
+   *         or null if this tree was not built from text.
+   */
+  public Map<Character, Long> frequencyMap() {
+    if (symbols == null) return null;
+    Map<Character, Long> map = new HashMap<>();
+    for (int i = 0; i < symbols.length; i++) {
+      map.put((char) symbols[i], freqs[i]);
+    }
+    return map;
+  }
+  
+  /**
+   * Measures how well this tree fits the text it was built from: entropy
+   * against average code length, header size and compression ratio.
+   * Computed on each call.
+   * 
+   * @return stats of this tree, or null if it was not built from text.
+   */
+  HuffmanStats getStats() {
+    if (symbols == null || !isValid()) return null;
+    long total = 0;
+    for (long count : freqs) {
+      total += count;
+    }
+    long headerBits;
+    if (canonical) {
+      BitWriter header = new BitWriter();
+      codebook().writeLengths(header);
+      headerBits = header.bitLength();
+    }
+    else {
+      headerBits = wideBitRep().length();
+    }
+    return new HuffmanStats(symbols.length, total, HuffmanStats.entropy(freqs),
+                            encodedBits(), codebook().maxLength(), headerBits,
+                            buildNanos);
   }
   
   public boolean isValid() {
-    return root != null;
+    return tree != null || codes != null;
+  }
+  
+  /**
+   * @return true if this tree uses canonical codes, so it can be saved
+   *         as code lengths (see codeLengthRep())
+   */
+  public boolean isCanonical() {
+    return canonical;
+  }
+  
+  /**
+   * @return true if chars not in this tree are encoded after an escape
+   *         code, so it can encode any text (see fromSample())
+   */
+  public boolean hasEscape() {
+    return escape;
+  }
+  
+  /**
+   * Returns the arrays of this tree, first building them from the
+   * codebook if this is a canonical tree that has not needed them yet.
+   * 
+   * @return this tree, as flat arrays
+   */
+  private FlatTree tree() {
+    if (tree == null) {
+      tree = FlatTree.fromCodebook(codes);
+    }
+    return tree;
+  }
+  
+  /**
+   * Assigns canonical codes straight from this tree's frequencies, without
+   * building any nodes: the chars are sorted by frequency once, and their
+   * code lengths computed in place (see CodeLengths.huffman()). Lengths
+   * longer than the limit are then recomputed with package-merge, with
+   * the least possible cost in encoded size.
+   * 
+   * Records the encoded size before and after limiting, for printStats().
+   * 
+   * Uses this tree's chars and frequencies, which must include at least
+   * two characters, counting the escape code if there is one.
+   * 
+   * @param limit longest code length allowed. Raised if there are too
+   *              many chars for codes that short.
+   */
+  private void buildCodeLengths(int limit) {
+    int n = symbols.length + (escape ? 1 : 0);
+    if (limit < CodeLengths.minLimit(n)) {
+      System.err.println("Warning: " + n + " chars do not fit in codes of "
+                       + limit + " bits. Using " + CodeLengths.minLimit(n) + ".");
+      limit = CodeLengths.minLimit(n);
+    }
+    
+    // Least frequent first, ties in char order. Packing the count above
+    //   the char sorts by both at once.
+    long[] keys = new long[n];
+    int i = 0;
+    for (; i < symbols.length; i++) {
+      keys[i] = freqs[i] << SYMBOL_BITS | symbols[i];
+    }
+    if (escape) {
+      keys[i++] = escapeCount() << SYMBOL_BITS | HuffmanCodebook.ESCAPE;
+    }
+    Arrays.sort(keys);
+    long[] sorted = new long[n];
+    for (i = 0; i < n; i++) {
+      sorted[i] = keys[i] >>> SYMBOL_BITS;
+    }
+    
+    long[] depths = sorted.clone();
+    CodeLengths.huffman(depths);
+    byte[] lengths = new byte[escape ? HuffmanCodebook.ESCAPE + 1
+                                     : symbols[symbols.length - 1] + 1];
+    unlimitedBits = 0;
+    for (i = 0; i < n; i++) {
+      unlimitedBits += sorted[i] * depths[i];
+    }
+    limitedBits = unlimitedBits;
+    
+    // Longest code is always first, for the least frequent char.
+    if (depths[0] > limit) {
+      byte[] sortedLengths = CodeLengths.packageMerge(sorted, limit);
+      limitedBits = 0;
+      for (i = 0; i < n; i++) {
+        lengths[(int) (keys[i] & SYMBOL_MASK)] = sortedLengths[i];
+        limitedBits += sorted[i] * sortedLengths[i];
+      }
+    }
+    else {
+      for (i = 0; i < n; i++) {
+        lengths[(int) (keys[i] & SYMBOL_MASK)] = (byte) depths[i];
+      }
+    }
+    lengthLimit = limit;
+    codes = HuffmanCodebook.canonical(lengths);
+    canonical = true;
+    tree = null; // Built from canonical codes if needed.
+  }
+  
+  /**
+   * Estimates how often chars that were not counted would turn up
+   * in the rest of the text: about as often as chars counted just once
+   * (the Good-Turing estimate), and at least once.
+   * 
+   * @return count to give the escape code.
+   */
+  private long escapeCount() {
+    long once = 0;
+    for (long count : freqs) {
+      if (count == 1) once++;
+    }
+    return Math.max(1, once);
   }
   
   /**
    * Counts frequencies of each unique character from provided array.
-   * Stores frequencies in this tree's frequency map.
+   * Keeps just the chars found and their frequencies (see CharCounts),
+   * not a slot for every char.
    * 
    * @param chars set to count frequencies from.
    */
   private void genFrequencyMap(char[] chars) {
-    freqs = new HashMap<>();
-    // Could use TreeMap or HashMap. TreeMap might be nice for testing,
-    //   but no long-term reason we actually need sorted chars.
-    freqGapCheck();
-    for (char c : chars) {
-      // TODO: Complete.
-    	Character charC = new Character(c);
-    	if(freqs.containsKey(charC)) freqs.replace(charC, freqs.get(charC) + 1);
-    	else freqs.put(charC, new Integer(1));
-    }
+    CharCounts counts = CharCounts.of(chars);
+    symbols = counts.chars;
+    freqs = counts.counts;
   }
   
   /**
-   * Fills in "gaps" in frequency map of characters to ensure certain
+   * Adds the chars of part of an array to a histogram. No boxing and no
+   * hashing: each char is just an index into the array of counts. Counted
+   * with SIMD code where available (see HuffmanKernels).
+   * 
+   * @param chars  array to count chars from.
+   * @param off    index of first char to count.
+   * @param len    number of chars to count.
+   * @param counts histogram to add to, ALPHABET_SIZE long.
+   */
+  static void countChars(char[] chars, int off, int len, long[] counts) {
+    HuffmanKernels.KERNELS.countChars(chars, off, len, counts);
+  }
+  
+  /**
+   * Fills in "gaps" in the alphabet of characters to ensure certain
    *   characters are present, even if with a frequency of 0.
+   *   Characters already counted keep their frequencies.
    *   
    * Gaps to check:
    * - All capital letters
@@ -91,28 +538,56 @@ public class HuffmanTree {
    * - Characters with ASCII values 44-47: ',' '-' '.' and '/'
    * - These characters with inconvenient ASCII values:
    *      '\n' '\r' ':' ';' '?'
-   * 
-   * @param freqs the frequency map to be filled in.
    */
   private void freqGapCheck() {
-    // TODO (OPTIONAL): Complete.
-	  for(int i = 65; i <= 90; i++) {
-		  freqs.put(new Character((char)i), new Integer(0));
-		  freqs.put(new Character((char)(i+22)), new Integer(0));
-	  }
-	  int[] uncomChars = new int[] {32,33,34,39,40,41,44,45,46,47,110,114,58,59,63};
-	  for(int i: uncomChars) {
-		  freqs.put(new Character((char)i), new Integer(0));
-	  }
+    // Merge the two sorted lists of chars.
+    int[] merged = new int[symbols.length + GAP_CHARS.length];
+    long[] mergedFreqs = new long[merged.length];
+    int n = 0;
+    int i = 0;
+    int g = 0;
+    while (i < symbols.length || g < GAP_CHARS.length) {
+      if (g == GAP_CHARS.length || (i < symbols.length && symbols[i] <= GAP_CHARS[g])) {
+        if (g < GAP_CHARS.length && symbols[i] == GAP_CHARS[g]) g++;
+        merged[n] = symbols[i];
+        mergedFreqs[n++] = freqs[i++];
+      }
+      else {
+        merged[n++] = GAP_CHARS[g++];
+      }
+    }
+    symbols = Arrays.copyOf(merged, n);
+    freqs = Arrays.copyOf(mergedFreqs, n);
+  }
+  
+  /**
+   * @return the chars freqGapCheck() fills in, in increasing order
+   */
+  private static int[] gapChars() {
+    char[] uncomChars = {' ', '!', '"', '\'', '(', ')', ',', '-', '.', '/',
+                         '\n', '\r', ':', ';', '?'};
+    int[] gaps = new int[26 + 26 + uncomChars.length];
+    int n = 0;
+    for (char c = 'A'; c <= 'Z'; c++) {
+      gaps[n++] = c;
+    }
+    for (char c = 'a'; c <= 'z'; c++) {
+      gaps[n++] = c;
+    }
+    for (char c : uncomChars) {
+      gaps[n++] = c;
+    }
+    Arrays.sort(gaps);
+    return gaps;
   }
   
   /**
    * Converts a frequency map to a Huffman Tree encoding the characters from
    * the map, with the more frequent chars higher in the tree.
    *
-   * @param freqs mappings from unique chars to their frequencies;
-   *              must include at least one character.
-   * @return      root of Huffman Tree generated.
+   * Uses this tree's chars and frequencies, which must include at least
+   * one character. The nodes are only used while building, and are
+   * then copied to flat arrays.
    */
   private void mapToTree() {
     PriorityQueue<HuffmanNode> pq = new PriorityQueue<HuffmanNode>();
@@ -125,14 +600,17 @@ public class HuffmanTree {
     //   (see online documentation for details)
     // TODO: Follow Huffman Tree construction process to assemble a tree
     //   based on the "freqs" map of characters and frequencies.
-    for(Character key: freqs.keySet()) {
-    	pq.add(new HuffmanLeaf(key, freqs.get(key)));
+    for (int i = 0; i < symbols.length; i++) {
+    	pq.add(new HuffmanLeaf((char) symbols[i], freqs[i]));
     }
     
     while(pq.peek() != null && pq.size() > 1) {
     	pq.add(new HuffmanParent(pq.poll(), pq.poll()));
     }
-    root = pq.poll();
+    HuffmanNode root = pq.poll();
+    if (root != null) {
+      tree = FlatTree.fromNodes(root);
+    }
   }
   
   /**
@@ -143,23 +621,56 @@ public class HuffmanTree {
    * @return     text decoded from the provided bits and this tree.
    */
   String decode(char[] bits) {
+    return decode(BitReader.fromBitChars(bits));
+  }
+  
+  /**
+   * Decodes packed bits using this Huffman Tree. Uses lookup tables
+   * built from the tree, so each character takes one or two table
+   * probes rather than one tree step per bit.
+   * 
+   * @param bits the packed bits to decode.
+   * 
+   * @return     text decoded from the provided bits and this tree.
+   */
+  String decode(BitReader bits) {
+    Object event = HuffmanEvents.SINK.begin(HuffmanEvents.DECODE);
     StringBuilder output = new StringBuilder();
-    
-    CharArrayIterator bitsIt = new CharArrayIterator(bits);
-    while (bitsIt.hasNext()) {
-      Character decoded = root.decode(bitsIt);
-      
-      // null result indicates no char could be generated because
-      //   not enough bits were available to reach a tree leaf.
-      if (decoded != null) {
-        output.append(decoded);
+    long bitsLeft = bits.remaining();
+    try {
+      TableDecoder table = decoder();
+      while (bits.hasNext()) {
+        int decoded = table.decode(bits);
+        
+        // -1 indicates no char could be generated because not
+        //   enough bits were available to reach a tree leaf.
+        if (decoded < 0) {
+          System.err.println("Warning: Ran out of bits during decode.");
+          break;
+        }
+        output.append((char) decoded);
       }
     }
+    finally {
+      HuffmanEvents.SINK.commit(event, output.length(), bitsLeft - bits.remaining());
+    }
     
-    // Convert StringBuilder back to String.
     return output.toString();
   }
   
+  /**
+   * Returns the lookup-table decoder for this tree, building it the
+   * first time it is needed.
+   * 
+   * @return decoder for this tree's codes
+   */
+  TableDecoder decoder() {
+    if (decoder == null) {
+      decoder = new TableDecoder(tree());
+    }
+    return decoder;
+  }
+  
   /**
    * Generates the full standard tree from the predefined constant.
    * The standard tree has all typical characters, at reasonable
@@ -170,11 +681,11 @@ public class HuffmanTree {
   public static HuffmanTree stdTree() {
     char[] chars = STD_TREE_BIT_STR.toCharArray();
     System.out.println("Test Tree Char Array: " + new String(chars));
-    CharArrayIterator treeBits = new CharArrayIterator(chars);
+    BitReader treeBits = BitReader.fromBitChars(chars);
     
     // Try this with the expectation of a possible error (Exception)
     try {
-      HuffmanTree result = new HuffmanTree(HuffmanNode.loadNode(treeBits));
+      HuffmanTree result = new HuffmanTree(FlatTree.readBitRep(treeBits));
       if (treeBits.hasNext()) {
         System.err.println("Warning: Some bits were not used while loading standard tree.");
       }
@@ -209,10 +720,10 @@ public class HuffmanTree {
     char[] chars = TEST_TREE_BIT_STR.toCharArray();
     String charsToString = new String(chars);
     System.out.println("Test Tree Char Array: " + charsToString);
-    CharArrayIterator treeBits = new CharArrayIterator(chars);
+    BitReader treeBits = BitReader.fromBitChars(chars);
     
     try {
-      HuffmanTree result = new HuffmanTree(HuffmanNode.loadNode(treeBits));
+      HuffmanTree result = new HuffmanTree(FlatTree.readBitRep(treeBits));
       if (treeBits.hasNext()) {
         System.err.println("Warning: Some bits were not used while loading test tree.");
       }
@@ -224,51 +735,121 @@ public class HuffmanTree {
     }
   }
   
+  /**
+   * Loads the standard or test tree like stdTree() and testTree(), but
+   * without printing anything, for library code (such as
+   * HuffmanStreams.encodeFixedTree()) and for files that name the tree
+   * rather than storing it (see HuffmanContainer).
+   * 
+   * @param standard true for the standard tree, false for the test tree.
+   * @return         the tree.
+   */
+  static HuffmanTree builtInTree(boolean standard) {
+    String bitStr = standard ? STD_TREE_BIT_STR : TEST_TREE_BIT_STR;
+    return new HuffmanTree(FlatTree.readBitRep(BitReader.fromBitChars(bitStr.toCharArray())));
+  }
+  
   /**
    * Builds bit String representation of tree starting from root.
    * Each node is represented in pre-order by:
    *    0 for parent node (followed by its children), OR
    *    1 for child node, followed by 8-bit ASCII code for its character
    * 
-   * Kick-starts recursive HuffmanNode.buildBitRep(StringBuilder) method.
+   * Kick-starts FlatTree.writeBitRep(StringBuilder) method.
    * 
    * @return bit String representing this tree. 
+   * @throws IllegalStateException if the tree has chars past 8 bits,
+   *         which only wideBitRep() can represent
    */
   public String bitRep() {
     StringBuilder sb = new StringBuilder();
-    root.buildBitRep(sb);
+    tree().writeBitRep(sb);
     return sb.toString();
   }
   
+  /**
+   * Builds bit String representation of tree like bitRep(), but with
+   * each char as wide as the largest one needs (after a 4-bit width), so
+   * it works for any Unicode chars. See FlatTree.writeWideBitRep().
+   * 
+   * @return bit String representing this tree.
+   */
+  public String wideBitRep() {
+    StringBuilder sb = new StringBuilder();
+    tree().writeWideBitRep(sb);
+    return sb.toString();
+  }
+  
+  /**
+   * Loads a tree from the bits written by wideBitRep().
+   * 
+   * @param bits the tree bits, advanced past the tree
+   * @return     tree with those nodes
+   * @throws NoSuchElementException if bits run out partway through
+   */
+  static HuffmanTree fromWideBitRep(BitReader bits) {
+    return new HuffmanTree(FlatTree.readWideBitRep(bits));
+  }
+  
+  /**
+   * Builds the canonical code length header for this tree, as a bit
+   * String. Only canonical trees can be rebuilt from it exactly; see
+   * HuffmanCodebook.writeLengths() for the format.
+   * 
+   * @return bit String of this tree's code lengths.
+   */
+  public String codeLengthRep() {
+    BitWriter out = new BitWriter();
+    codebook().writeLengths(out);
+    return out.toString();
+  }
+  
   /**
    * Generates bit map giving quick access to encoding Strings for ALL
    * chars in leaves of a finished tree.
    * 
-   * Kick-starts recursive HuffmanNode.setBitStrings(String, Map) method.
+   * Kick-starts FlatTree.bitStrings() method.
    * 
    * @return the mappings from each leaf character to the bit String
    *         encoding its position in the tree.
    */
   public Map<Character, String> bitStrings() {
-    Map<Character, String> bitMap = new HashMap<>();
-    // It takes no bits to get to the root node: ""
-    root.setBitStrings("", bitMap);
-    return bitMap;
+    return tree().bitStrings();
+  }
+  
+  /**
+   * Returns the int codes for ALL chars in leaves of a finished tree.
+   * These are the same codes as bitStrings(), without the Strings.
+   * 
+   * Kick-starts FlatTree.codebook() the first time, unless this is a
+   * canonical tree (which starts with its codebook).
+   * 
+   * @return the code of each leaf character.
+   * @throws IllegalArgumentException if a code is longer than an int
+   */
+  HuffmanCodebook codebook() {
+    if (codes == null) {
+      codes = tree.codebook();
+    }
+    return codes;
   }
 
   /**
-   * Displays tree with root at left, tree "descending" to right. Display of
-   * 0s & 1s in tree can be toggled with DISP_ALL_BITS constant.
+   * Displays tree with root at left, tree "descending" to right.
+   * 
+   * Kick-starts recursive HuffmanNode.display(StringBuilder, boolean)
+   * method, on a node view of this tree built just for display.
    * 
-   * Kick-starts recursive HuffmanNode.display(StringBuilder) method.
+   * @param allBits true to show all parent bits before each leaf, false
+   *                to show each branch bit once (see Driver.DISP_ALL_BITS).
    */
-  void display() {
-    if (Driver.DISP_ALL_BITS) {
+  void display(boolean allBits) {
+    if (allBits) {
       System.out.println("Tree displayed in left-to-right order of leaves, with all parent bits shown for each leaf.");
     }
     else {
       System.out.println("Tree displayed with root at left, leaves at right. Each 0 or 1 is a branch in tree.");
     }
-    root.display(new StringBuilder());
+    tree().toNodes().display(new StringBuilder(), allBits);
   }
 }
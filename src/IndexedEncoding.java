@@ -0,0 +1,292 @@
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * Packed bits plus a block index: the bit offset and char count at the
+ * start of every block of a fixed number of chars. Since a code can only
+ * be found by decoding everything before it, the index is what makes it
+ * possible to (a) decode any range of chars without decoding the ones
+ * before it, and (b) decode all blocks in parallel.
+ *
+ * Written format:
+ *   8 bytes: number of chars encoded
+ *   4 bytes: chars per block
+ *   8 bytes: number of bits
+ *   per block: 8-byte bit offset of the block's first char
+ *   then the packed bits
+ * The char count of each block follows from the chars per block.
+ */
+class IndexedEncoding {
+  /**
+   * Default chars per block.
+   */
+  final static int BLOCK_CHARS = 1 << 12;
+
+  /**
+   * Packed bits of all chars.
+   */
+  private final byte[] bits;
+  /**
+   * Number of meaningful bits in bits.
+   */
+  private final long bitLength;
+  /**
+   * Number of chars encoded.
+   */
+  private final long chars;
+  /**
+   * Chars per block.
+   */
+  private final int blockChars;
+  /**
+   * Bit offset of the first char of each block.
+   */
+  private final long[] offsets;
+
+  private IndexedEncoding(byte[] bits, long bitLength, long chars,
+                          int blockChars, long[] offsets) {
+    this.bits = bits;
+    this.bitLength = bitLength;
+    this.chars = chars;
+    this.blockChars = blockChars;
+    this.offsets = offsets;
+  }
+
+  /**
+   * Encodes text, recording the start of every block. Chars absent from
+   * the codebook are skipped, as in Driver.encode(), and do not count
+   * toward blocks.
+   *
+   * @param codes      code for each char.
+   * @param text       text to encode.
+   * @param blockChars chars per block.
+   * @return           the encoded text with its index.
+   */
+  static IndexedEncoding encode(HuffmanCodebook codes, char[] text, int blockChars) {
+    if (blockChars <= 0) {
+      throw new IllegalArgumentException("Block size must be positive: " + blockChars);
+    }
+    Object event = HuffmanEvents.SINK.begin(HuffmanEvents.ENCODE);
+    BitWriter out = new BitWriter(text.length / 2 + 1);
+    long[] offsets = new long[text.length / blockChars + 1];
+    int blocks = 0;
+    long count = 0;
+    for (char c : text) {
+      int len = codes.length(c);
+      if (len == 0) continue;
+      if (count % blockChars == 0) {
+        offsets[blocks++] = out.bitLength();
+      }
+      out.writeBits(codes.code(c), len);
+      count++;
+    }
+    HuffmanEvents.SINK.commit(event, count, out.bitLength());
+    return new IndexedEncoding(out.toByteArray(), out.bitLength(), count,
+                               blockChars, Arrays.copyOf(offsets, blocks));
+  }
+
+  /**
+   * @return number of chars encoded
+   */
+  long length() {
+    return chars;
+  }
+
+  /**
+   * @return number of bits the chars were encoded in
+   */
+  long bitLength() {
+    return bitLength;
+  }
+
+  /**
+   * @return number of blocks in the index
+   */
+  int blocks() {
+    return offsets.length;
+  }
+
+  //================\\
+  // DECODE METHODS \\
+  //================\\
+
+  /**
+   * Decodes a range of chars, starting from the nearest block at or
+   * before it rather than from the first bit.
+   *
+   * @param table decoder for the tree the text was encoded with.
+   * @param from  index of the first char to decode.
+   * @param count number of chars to decode.
+   * @return      the decoded chars.
+   * @throws IndexOutOfBoundsException if the range is outside the text
+   * @throws IllegalStateException     if the bits do not decode
+   */
+  String decodeRange(TableDecoder table, long from, int count) {
+    if (from < 0 || count < 0 || from + count > chars) {
+      throw new IndexOutOfBoundsException("Range " + from + "+" + count
+          + " is outside 0-" + chars + ".");
+    }
+    if (count == 0) return "";
+    char[] out = new char[count];
+    int block = (int) (from / blockChars);
+    BitReader in = new BitReader(bits, bitLength);
+    in.seek(offsets[block]);
+    // Skip the chars between the block start and the range start.
+    for (long skip = from - (long) block * blockChars; skip > 0; skip--) {
+      next(table, in);
+    }
+    for (int i = 0; i < count; i++) {
+      out[i] = next(table, in);
+    }
+    return new String(out);
+  }
+
+  /**
+   * Decodes all chars, one block per ForkJoinPool task.
+   *
+   * @param table decoder for the tree the text was encoded with.
+   * @param pool  threads to decode on.
+   * @return      the decoded chars.
+   * @throws IllegalStateException if the bits do not decode
+   */
+  char[] decodeAll(TableDecoder table, ForkJoinPool pool) {
+    if (chars > Integer.MAX_VALUE) {
+      throw new IllegalStateException(chars + " chars do not fit in an array.");
+    }
+    Object event = HuffmanEvents.SINK.begin(HuffmanEvents.DECODE);
+    boolean decoded = false;
+    try {
+      char[] out = new char[(int) chars];
+      if (offsets.length > 0) {
+        pool.invoke(new DecodeTask(table, out, 0, offsets.length));
+      }
+      decoded = true;
+      return out;
+    }
+    finally {
+      HuffmanEvents.SINK.commit(event, decoded ? chars : 0, decoded ? bitLength : 0);
+    }
+  }
+
+  /**
+   * Task decoding a range of blocks, splitting itself in half until there
+   * is only one block left.
+   */
+  private class DecodeTask extends RecursiveAction {
+    private final static long serialVersionUID = 1L;
+
+    private final TableDecoder table;
+    private final char[] out;
+    private final int first;
+    private final int last;
+
+    /**
+     * @param table decoder for the tree the text was encoded with.
+     * @param out   all decoded chars, filled in by this task.
+     * @param first index of first block to decode.
+     * @param last  one past the index of the last block to decode.
+     */
+    DecodeTask(TableDecoder table, char[] out, int first, int last) {
+      this.table = table;
+      this.out = out;
+      this.first = first;
+      this.last = last;
+    }
+
+    @Override
+    protected void compute() {
+      if (last - first > 1) {
+        int mid = (first + last) >>> 1;
+        invokeAll(new DecodeTask(table, out, first, mid),
+                  new DecodeTask(table, out, mid, last));
+        return;
+      }
+      // Each task reads through its own BitReader.
+      BitReader in = new BitReader(bits, bitLength);
+      in.seek(offsets[first]);
+      int start = first * blockChars;
+      int end = (int) Math.min(chars, (long) start + blockChars);
+      for (int i = start; i < end; i++) {
+        out[i] = next(table, in);
+      }
+    }
+  }
+
+  /**
+   * @param table decoder for the tree the text was encoded with.
+   * @param in    bits to decode from, advanced past one char.
+   * @return      the decoded char.
+   * @throws IllegalStateException if the bits run out partway through a code
+   */
+  private static char next(TableDecoder table, BitReader in) {
+    int c = table.decode(in);
+    if (c < 0) {
+      throw new IllegalStateException("Ran out of bits during decode.");
+    }
+    return (char) c;
+  }
+
+  //==================\\
+  // READ/WRITE BYTES \\
+  //==================\\
+
+  /**
+   * Writes the index and bits in the format described above.
+   *
+   * @param out stream to write to. Flushed, but not closed.
+   * @throws IOException if out cannot be written
+   */
+  void writeTo(OutputStream out) throws IOException {
+    DataOutputStream data = new DataOutputStream(out);
+    data.writeLong(chars);
+    data.writeInt(blockChars);
+    data.writeLong(bitLength);
+    for (long offset : offsets) {
+      data.writeLong(offset);
+    }
+    data.write(bits, 0, (int) ((bitLength + 7) >>> 3));
+    data.flush();
+  }
+
+  /**
+   * Reads an index and bits written by writeTo().
+   *
+   * @param in bytes to read, starting at the buffer's position.
+   * @return   the encoded text with its index.
+   * @throws IllegalArgumentException if in is not a valid indexed encoding
+   */
+  static IndexedEncoding readFrom(ByteBuffer in) {
+    try {
+      long chars = in.getLong();
+      int blockChars = in.getInt();
+      long bitLength = in.getLong();
+      if (chars < 0 || blockChars <= 0 || bitLength < 0
+          || bitLength > 8L * in.remaining()) {
+        throw new IllegalArgumentException("Bad indexed encoding header.");
+      }
+      long blocks = chars / blockChars + (chars % blockChars == 0 ? 0 : 1);
+      if (blocks > in.remaining() / 8) {
+        throw new IllegalArgumentException("Index is larger than the input.");
+      }
+      long[] offsets = new long[(int) blocks];
+      for (int i = 0; i < offsets.length; i++) {
+        offsets[i] = in.getLong();
+        if (offsets[i] < 0 || offsets[i] > bitLength) {
+          throw new IllegalArgumentException("Bad block offset " + offsets[i] + ".");
+        }
+      }
+      byte[] bits = new byte[(int) ((bitLength + 7) >>> 3)];
+      in.get(bits);
+      return new IndexedEncoding(bits, bitLength, chars, blockChars, offsets);
+    }
+    catch (BufferUnderflowException bue) {
+      throw new IllegalArgumentException("Indexed encoding is truncated.");
+    }
+  }
+}
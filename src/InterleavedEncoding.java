@@ -0,0 +1,231 @@
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+/**
+ * Packed bits split into several interleaved streams, each encoding an
+ * equal share of the chars, in the style of zstd's huff0. Within one
+ * stream, each code has to be decoded before the next one can be found;
+ * with several streams, the decoder takes one char from every stream in
+ * turn, so the CPU can work on the streams' codes at the same time
+ * rather than waiting on each code in order.
+ *
+ * Stream s holds chars s * n to (s + 1) * n - 1, where n is the chars
+ * divided by the streams, rounded up; the last streams may come up short,
+ * or even empty. Each stream starts on a byte boundary.
+ *
+ * Written format:
+ *   8 bytes: number of chars encoded
+ *   4 bytes: number of streams
+ *   per stream: 8-byte number of bits (the jump table)
+ *   then each stream's packed bits, padded to a whole byte
+ */
+class InterleavedEncoding {
+  /**
+   * Default number of streams.
+   */
+  final static int STREAMS = 4;
+
+  /**
+   * Packed bits of each stream, padded for the decoder.
+   */
+  private final byte[][] streams;
+  /**
+   * Number of meaningful bits in each stream.
+   */
+  private final long[] bitLengths;
+  /**
+   * Number of chars encoded.
+   */
+  private final int chars;
+
+  private InterleavedEncoding(byte[][] streams, long[] bitLengths, int chars) {
+    this.streams = streams;
+    this.bitLengths = bitLengths;
+    this.chars = chars;
+  }
+
+  /**
+   * Encodes text as interleaved streams. Chars absent from the codebook
+   * are skipped, as in Driver.encode(), and do not count toward streams.
+   *
+   * @param codes   code for each char.
+   * @param text    text to encode.
+   * @param streams number of streams, at least 1.
+   * @return        the encoded text.
+   */
+  static InterleavedEncoding encode(HuffmanCodebook codes, char[] text, int streams) {
+    if (streams <= 0) {
+      throw new IllegalArgumentException("Stream count must be positive: " + streams);
+    }
+    Object event = HuffmanEvents.SINK.begin(HuffmanEvents.ENCODE);
+    // Split by the chars actually encoded.
+    int count = 0;
+    for (char c : text) {
+      if (codes.length(c) > 0) count++;
+    }
+    if (count < text.length) {
+      char[] kept = new char[count];
+      int i = 0;
+      for (char c : text) {
+        if (codes.length(c) > 0) kept[i++] = c;
+      }
+      text = kept;
+    }
+
+    byte[][] bits = new byte[streams][];
+    long[] bitLengths = new long[streams];
+    long total = 0;
+    int share = share(count, streams);
+    for (int s = 0; s < streams; s++) {
+      int start = Math.min(count, s * share);
+      int end = Math.min(count, start + share);
+      BitWriter out = new BitWriter((end - start) / 2 + 1);
+      for (int i = start; i < end; i++) {
+        out.writeBits(codes.code(text[i]), codes.length(text[i]));
+      }
+      bits[s] = padded(out.toByteArray());
+      bitLengths[s] = out.bitLength();
+      total += out.bitLength();
+    }
+    HuffmanEvents.SINK.commit(event, count, total);
+    return new InterleavedEncoding(bits, bitLengths, count);
+  }
+
+  /**
+   * @param bytes packed bits of a stream.
+   * @return      the same bits, followed by the padding the decoder
+   *              needs (see TableDecoder.STREAM_PADDING).
+   */
+  private static byte[] padded(byte[] bytes) {
+    return Arrays.copyOf(bytes, bytes.length + TableDecoder.STREAM_PADDING);
+  }
+
+  /**
+   * @param chars   number of chars encoded.
+   * @param streams number of streams.
+   * @return        chars in each full stream.
+   */
+  private static int share(int chars, int streams) {
+    return (int) (((long) chars + streams - 1) / streams);
+  }
+
+  /**
+   * @return number of chars encoded
+   */
+  int length() {
+    return chars;
+  }
+
+  /**
+   * @return number of streams
+   */
+  int streams() {
+    return streams.length;
+  }
+
+  /**
+   * @return total bits in all streams, not counting padding
+   */
+  long bitLength() {
+    long total = 0;
+    for (long bits : bitLengths) {
+      total += bits;
+    }
+    return total;
+  }
+
+  //================\\
+  // DECODE METHODS \\
+  //================\\
+
+  /**
+   * Decodes all chars, taking one char from each stream in turn (see
+   * TableDecoder.decodeInterleaved()).
+   *
+   * @param table decoder for the tree the text was encoded with.
+   * @return      the decoded chars.
+   * @throws IllegalStateException if the bits do not decode
+   */
+  char[] decode(TableDecoder table) {
+    int n = streams.length;
+    int share = share(chars, n);
+    int[] starts = new int[n];
+    int[] counts = new int[n];
+    for (int s = 0; s < n; s++) {
+      starts[s] = Math.min(chars, s * share);
+      counts[s] = Math.min(chars, starts[s] + share) - starts[s];
+    }
+    Object event = HuffmanEvents.SINK.begin(HuffmanEvents.DECODE);
+    boolean decoded = false;
+    try {
+      char[] out = new char[chars];
+      table.decodeInterleaved(streams, bitLengths, out, starts, counts);
+      decoded = true;
+      return out;
+    }
+    finally {
+      HuffmanEvents.SINK.commit(event, decoded ? chars : 0, decoded ? bitLength() : 0);
+    }
+  }
+
+  //==================\\
+  // READ/WRITE BYTES \\
+  //==================\\
+
+  /**
+   * Writes the jump table and streams in the format described above.
+   *
+   * @param out stream to write to. Flushed, but not closed.
+   * @throws IOException if out cannot be written
+   */
+  void writeTo(OutputStream out) throws IOException {
+    DataOutputStream data = new DataOutputStream(out);
+    data.writeLong(chars);
+    data.writeInt(streams.length);
+    for (long bits : bitLengths) {
+      data.writeLong(bits);
+    }
+    for (int s = 0; s < streams.length; s++) {
+      data.write(streams[s], 0, (int) ((bitLengths[s] + 7) >>> 3));
+    }
+    data.flush();
+  }
+
+  /**
+   * Reads a jump table and streams written by writeTo().
+   *
+   * @param in bytes to read, starting at the buffer's position.
+   * @return   the encoded text.
+   * @throws IllegalArgumentException if in is not a valid interleaved
+   *         encoding
+   */
+  static InterleavedEncoding readFrom(ByteBuffer in) {
+    try {
+      long chars = in.getLong();
+      int n = in.getInt();
+      if (chars < 0 || chars > Integer.MAX_VALUE || n <= 0 || (long) n * 8 > in.remaining()) {
+        throw new IllegalArgumentException("Bad interleaved encoding header.");
+      }
+      long[] bitLengths = new long[n];
+      for (int s = 0; s < n; s++) {
+        bitLengths[s] = in.getLong();
+        if (bitLengths[s] < 0 || bitLengths[s] > 8L * in.remaining()) {
+          throw new IllegalArgumentException("Bad stream length " + bitLengths[s] + ".");
+        }
+      }
+      byte[][] streams = new byte[n][];
+      for (int s = 0; s < n; s++) {
+        streams[s] = new byte[(int) ((bitLengths[s] + 7) >>> 3) + TableDecoder.STREAM_PADDING];
+        in.get(streams[s], 0, streams[s].length - TableDecoder.STREAM_PADDING);
+      }
+      return new InterleavedEncoding(streams, bitLengths, (int) chars);
+    }
+    catch (BufferUnderflowException bue) {
+      throw new IllegalArgumentException("Interleaved encoding is truncated.");
+    }
+  }
+}
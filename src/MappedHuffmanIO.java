@@ -0,0 +1,321 @@
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.CharacterCodingException;
+import java.nio.charset.CharsetDecoder;
+import java.nio.charset.CoderResult;
+import java.nio.charset.CodingErrorAction;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Random;
+import java.util.Set;
+
+/**
+ * Memory-mapped alternative to HuffmanStreams for local files. Input
+ * files are read straight out of the OS page cache through
+ * FileChannel.map() instead of being copied into stream buffers first.
+ *
+ * Files are mapped a window at a time, so files larger than one
+ * MappedByteBuffer (2 GB) work too. Encoded output uses the same frames
+ * as HuffmanStreams, so either can decode what the other encoded.
+ */
+class MappedHuffmanIO {
+  /**
+   * Most bytes mapped at once.
+   */
+  final static int WINDOW_BYTES = 1 << 28;
+
+  /**
+   * Bytes per block when sampling a file (see sampleTree()).
+   */
+  final static int SAMPLE_BLOCK_BYTES = 1 << 16;
+
+  /**
+   * Seed for random sampling, so a file always gets the same tree.
+   */
+  private final static long SAMPLE_SEED = 0x5EED;
+
+  // Static methods only.
+  private MappedHuffmanIO() {
+  }
+
+  /**
+   * Something to do with each buffer of chars decoded from a file.
+   */
+  private interface CharSink {
+    void accept(char[] buf, int n) throws IOException;
+  }
+
+  /**
+   * Decodes the chars of a text file window by window, handing them to
+   * sink a buffer at a time.
+   *
+   * @param file text file to read, in HuffmanStreams.CHARSET.
+   * @param sink receives each buffer of chars.
+   * @throws IOException if file cannot be read, or is not valid text
+   */
+  private static void readChars(File file, CharSink sink) throws IOException {
+    CharsetDecoder decoder = HuffmanStreams.CHARSET.newDecoder()
+        .onMalformedInput(CodingErrorAction.REPLACE)
+        .onUnmappableCharacter(CodingErrorAction.REPLACE);
+    CharBuffer chars = CharBuffer.allocate(HuffmanStreams.BUFFER_CHARS);
+
+    try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+      long size = channel.size();
+      long start = 0;
+      while (true) {
+        long windowSize = Math.min(WINDOW_BYTES, size - start);
+        boolean last = start + windowSize == size;
+        MappedByteBuffer window = channel.map(FileChannel.MapMode.READ_ONLY, start, windowSize);
+
+        while (true) {
+          CoderResult result = decoder.decode(window, chars, last);
+          if (result.isError()) result.throwException();
+          if (chars.position() > 0 && (result.isOverflow() || !window.hasRemaining())) {
+            sink.accept(chars.array(), chars.position());
+            chars.clear();
+          }
+          if (result.isUnderflow()) break;
+        }
+        if (last) break;
+        // A char split across windows is decoded at the start of the next.
+        start += window.position();
+      }
+
+      while (decoder.flush(chars).isOverflow() || chars.position() > 0) {
+        sink.accept(chars.array(), chars.position());
+        chars.clear();
+      }
+    }
+    catch (CharacterCodingException cce) {
+      throw new IOException("Could not decode " + file + ": " + cce.getMessage());
+    }
+  }
+
+  //=========================\\
+  // HISTOGRAM AND TREE PASS \\
+  //=========================\\
+
+  /**
+   * Builds a Huffman Tree from the chars of a mapped text file.
+   *
+   * @param file   text file to base frequencies on.
+   * @param config options to build the tree with.
+   * @return       tree for the file's chars.
+   * @throws IOException if file cannot be read
+   */
+  static HuffmanTree buildTree(File file, HuffmanConfig config) throws IOException {
+    final long[] counts = new long[HuffmanTree.ALPHABET_SIZE];
+    readChars(file, new CharSink() {
+      public void accept(char[] buf, int n) {
+        HuffmanTree.countChars(buf, 0, n, counts);
+      }
+    });
+    return new HuffmanTree(counts, config);
+  }
+
+  /**
+   * Builds a Huffman Tree from a sample of a mapped text file's blocks,
+   * so only that share of the file is read. Chars missed by the sample
+   * are encoded after an escape code; see HuffmanTree.fromSample(),
+   * which also estimates what sampling costs in encoded size.
+   *
+   * Blocks are decoded from their first whole char: any replacement
+   * chars from a multi-byte char cut off at the start are skipped.
+   *
+   * @param file     text file to base frequencies on.
+   * @param fraction share of the file's blocks to read, over 0.
+   * @param random   true to pick blocks at random (the same ones every
+   *                 run), false to pick evenly spaced blocks.
+   * @param config   options to build the tree with.
+   * @return         tree for the file's chars, counting every char if
+   *                 the sample would be most of the file anyway.
+   * @throws IOException if file cannot be read
+   */
+  static HuffmanTree sampleTree(File file, double fraction, boolean random,
+                                HuffmanConfig config) throws IOException {
+    long size = file.length();
+    long blocks = (size + SAMPLE_BLOCK_BYTES - 1) / SAMPLE_BLOCK_BYTES;
+    long picks = Math.max(2, (long) Math.ceil(blocks * fraction));
+    if (picks >= blocks) {
+      return buildTree(file, config);
+    }
+
+    CharsetDecoder decoder = HuffmanStreams.CHARSET.newDecoder()
+        .onMalformedInput(CodingErrorAction.REPLACE)
+        .onUnmappableCharacter(CodingErrorAction.REPLACE);
+    char replacement = decoder.replacement().charAt(0);
+    CharBuffer chars = CharBuffer.allocate(
+        (int) Math.ceil(SAMPLE_BLOCK_BYTES * (double) decoder.maxCharsPerByte()) + 1);
+    // Alternate blocks go to each half, for HuffmanTree.fromSample().
+    long[][] halves = new long[2][HuffmanTree.ALPHABET_SIZE];
+
+    try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+      long[] starts = pickBlocks(blocks, (int) picks, random);
+      for (int i = 0; i < starts.length; i++) {
+        long start = starts[i] * SAMPLE_BLOCK_BYTES;
+        long length = Math.min(SAMPLE_BLOCK_BYTES, size - start);
+        boolean last = start + length == size;
+        MappedByteBuffer block = channel.map(FileChannel.MapMode.READ_ONLY, start, length);
+
+        decoder.reset();
+        chars.clear();
+        decoder.decode(block, chars, last);
+        if (last) decoder.flush(chars);
+        int from = 0;
+        if (start > 0) {
+          while (from < chars.position() && chars.get(from) == replacement) from++;
+        }
+        HuffmanTree.countChars(chars.array(), from, chars.position() - from, halves[i & 1]);
+      }
+    }
+    return HuffmanTree.fromSample(halves[0], halves[1], config);
+  }
+
+  /**
+   * Picks which blocks of a file to sample.
+   *
+   * @param blocks number of blocks in the file.
+   * @param picks  number of blocks to pick, under blocks.
+   * @param random true to pick at random, false to spread picks evenly.
+   * @return       indexes of the picked blocks, in increasing order.
+   */
+  private static long[] pickBlocks(long blocks, int picks, boolean random) {
+    long[] starts = new long[picks];
+    if (!random) {
+      for (int i = 0; i < picks; i++) {
+        starts[i] = i * blocks / picks;
+      }
+      return starts;
+    }
+    // Floyd's algorithm: picks distinct blocks in one try each.
+    Random rand = new Random(SAMPLE_SEED);
+    Set<Long> picked = new HashSet<>();
+    for (long j = blocks - picks; j < blocks; j++) {
+      long t = (long) (rand.nextDouble() * (j + 1));
+      picked.add(picked.contains(t) ? j : t);
+    }
+    int i = 0;
+    for (long block : picked) {
+      starts[i++] = block;
+    }
+    Arrays.sort(starts);
+    return starts;
+  }
+
+  //=================\\
+  // ENCODE / DECODE \\
+  //=================\\
+
+  /**
+   * Encodes a mapped text file into frames of packed bits. Chars absent
+   * from the codebook are skipped, as in Driver.encode().
+   *
+   * @param codes code for each char.
+   * @param in    text file to encode.
+   * @param out   file to write frames to.
+   * @return      number of chars read.
+   * @throws IOException if in cannot be read or out written
+   */
+  static long encode(final HuffmanCodebook codes, File in, File out) throws IOException {
+    Object event = HuffmanEvents.SINK.begin(HuffmanEvents.ENCODE);
+    final long[] total = {0};
+    final long[] totalBits = {0};
+    try (final DataOutputStream data = new DataOutputStream(
+        new BufferedOutputStream(new FileOutputStream(out), 1 << 16))) {
+      final BitWriter bits = new BitWriter(HuffmanStreams.BUFFER_CHARS);
+      readChars(in, new CharSink() {
+        public void accept(char[] buf, int n) throws IOException {
+          HuffmanStreams.writeFrame(codes, buf, n, bits, data);
+          total[0] += n;
+          totalBits[0] += bits.bitLength();
+        }
+      });
+      data.writeInt(0); // End of stream.
+    }
+    finally {
+      HuffmanEvents.SINK.commit(event, total[0], totalBits[0]);
+    }
+    return total[0];
+  }
+
+  /**
+   * Decodes a mapped file of frames back into text. Each frame's bits
+   * are read directly from the mapping.
+   *
+   * @param tree tree the frames were encoded with.
+   * @param in   file of frames to decode.
+   * @param out  text output. Flushed, but not closed.
+   * @return     number of chars decoded.
+   * @throws IOException if in cannot be read or out written, or in ends
+   *         early or holds a frame that does not decode.
+   */
+  static long decode(HuffmanTree tree, File in, Writer out) throws IOException {
+    Object event = HuffmanEvents.SINK.begin(HuffmanEvents.DECODE);
+    TableDecoder table = tree.decoder();
+    char[] buf = new char[HuffmanStreams.BUFFER_CHARS];
+    int used = 0;
+    long total = 0;
+    long totalBits = 0;
+
+    try (FileChannel channel = FileChannel.open(in.toPath(), StandardOpenOption.READ)) {
+      long size = channel.size();
+      long windowStart = 0;
+      MappedByteBuffer window = channel.map(FileChannel.MapMode.READ_ONLY, 0,
+                                            Math.min(WINDOW_BYTES, size));
+      long pos = 0; // File position of next frame.
+
+      while (true) {
+        if (pos + 4 > size) {
+          throw new IOException("File ended without an end frame.");
+        }
+        // Largest possible frame must be inside the window.
+        long frameEnd = Math.min(size, pos + 4 + HuffmanStreams.MAX_FRAME_BITS / 8);
+        if (frameEnd > windowStart + window.capacity()) {
+          windowStart = pos;
+          window = channel.map(FileChannel.MapMode.READ_ONLY, windowStart,
+                               Math.min(WINDOW_BYTES, size - windowStart));
+        }
+
+        int offset = (int) (pos - windowStart);
+        int bitCount = window.getInt(offset);
+        if (bitCount == 0) break;
+        int byteCount = (bitCount + 7) >>> 3;
+        if (bitCount < 0 || bitCount > HuffmanStreams.MAX_FRAME_BITS
+            || offset + 4 + byteCount > window.capacity()) {
+          throw new IOException("Bad frame size: " + bitCount + " bits.");
+        }
+
+        ByteBuffer frame = window.duplicate();
+        frame.position(offset + 4);
+        frame.limit(offset + 4 + byteCount);
+        BitReader bits = new BitReader(frame, bitCount);
+        totalBits += bitCount;
+        while (bits.hasNext()) {
+          buf[used++] = HuffmanStreams.decodeChar(table, bits);
+          if (used == buf.length) {
+            out.write(buf, 0, used);
+            total += used;
+            used = 0;
+          }
+        }
+        pos += 4 + byteCount;
+      }
+      out.write(buf, 0, used);
+      total += used;
+      out.flush();
+    }
+    finally {
+      HuffmanEvents.SINK.commit(event, total, totalBits);
+    }
+    return total;
+  }
+}
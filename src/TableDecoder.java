@@ -0,0 +1,294 @@
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+/**
+ * Lookup-table decoder, built once from a Huffman Tree. Rather than
+ * following one tree branch per bit, it peeks several bits at once and
+ * finds the character and its code length with a single table probe.
+ *
+ * Codes longer than the primary table's index fall through to a
+ * secondary table, which is indexed by the bits after the primary ones
+ * (and so on for very long codes). A secondary table has no more entries
+ * than about twice the leaves under it, so large alphabets with long,
+ * sparse codes do not blow up the tables.
+ *
+ * An escape code (see HuffmanCodebook.ESCAPE) decodes to the char
+ * written after it.
+ *
+ * Table entries are ints:
+ *   >= 0: char (or ESCAPE) << 6 | bits used at this level
+ *   <  0: ~(offset of next table << 6 | index bits of next table)
+ */
+class TableDecoder {
+  /**
+   * Most index bits of any one table. 2^10 ints is 4 KB, small enough
+   * to stay in L1 cache.
+   */
+  final static int TABLE_BITS = 10;
+
+  /**
+   * Bytes needed after each stream given to decodeInterleaved(), so a
+   * whole long can be read at any bit of the stream.
+   */
+  final static int STREAM_PADDING = 8;
+
+  /**
+   * Smallest table entry for the escape code.
+   */
+  private final static int ESCAPE_ENTRY = HuffmanCodebook.ESCAPE << 6;
+
+  /**
+   * All tables, back to back. The primary table starts at 0.
+   */
+  private int[] table = new int[0];
+  /**
+   * Used length of table while building.
+   */
+  private int size = 0;
+  /**
+   * Index bits of the primary table. 0 if the tree is a lone leaf,
+   *   which has no codes to decode.
+   */
+  private final int rootBits;
+
+  /**
+   * Constructs the decode tables for a tree.
+   *
+   * @param tree tree whose codes will be decoded
+   */
+  TableDecoder(FlatTree tree) {
+    rootBits = Math.min(TABLE_BITS, tree.height(tree.root()));
+    if (rootBits > 0) {
+      build(tree, tree.root(), rootBits);
+    }
+  }
+
+  /**
+   * Builds one table for the sub-tree under a node, plus any secondary
+   * tables it needs.
+   *
+   * @param tree tree being decoded
+   * @param node parent index of the root of the sub-tree
+   * @param bits index bits of this table
+   * @return     offset of the new table
+   */
+  private int build(FlatTree tree, int node, int bits) {
+    int offset = allocate(1 << bits);
+    for (int index = 0; index < (1 << bits); index++) {
+      // Follow the index's bits down the tree, first bit first.
+      int n = node;
+      int used = 0;
+      while (n >= 0 && used < bits) {
+        int bit = (index >>> (bits - 1 - used)) & 1;
+        n = bit == 0 ? tree.zero(n) : tree.one(n);
+        used++;
+      }
+      if (n < 0) {
+        table[offset + index] = tree.symbol(~n) << 6 | used;
+      }
+      else {
+        // Ran out of index bits partway down: continue in a new table.
+        // Each such node is only reached by this one index.
+        int subBits = subTableBits(tree, n);
+        int sub = build(tree, n, subBits);
+        table[offset + index] = ~(sub << 6 | subBits);
+      }
+    }
+    return offset;
+  }
+
+  /**
+   * @param tree tree being decoded
+   * @param node parent index of the root of a sub-tree
+   * @return     index bits for the sub-tree's table: enough to tell its
+   *             leaves apart, but no more than its height or TABLE_BITS
+   */
+  private static int subTableBits(FlatTree tree, int node) {
+    int leafBits = 32 - Integer.numberOfLeadingZeros(tree.leaves(node) - 1);
+    return Math.min(TABLE_BITS, Math.min(tree.height(node), leafBits));
+  }
+
+  /**
+   * Reserves space for one more table.
+   *
+   * @param entries size of the table
+   * @return        offset of the reserved space
+   */
+  private int allocate(int entries) {
+    int offset = size;
+    size += entries;
+    if (size > table.length) {
+      table = Arrays.copyOf(table, Math.max(size, table.length * 2));
+    }
+    return offset;
+  }
+
+  /**
+   * Decodes one character.
+   *
+   * @param bits packed bits, advanced past the character's code
+   * @return     decoded char, or -1 if the remaining bits do not make
+   *             up a whole code (bits is then left unchanged)
+   */
+  int decode(BitReader bits) {
+    if (rootBits == 0) return -1; // Lone leaf has no codes.
+    long mark = bits.position();
+    int offset = 0;
+    int width = rootBits;
+    while (true) {
+      int entry = table[offset + bits.peekBits(width)];
+      if (entry >= 0) {
+        int used = entry & 63;
+        int c = entry >>> 6;
+        if (c == HuffmanCodebook.ESCAPE) {
+          // The char itself follows the escape code.
+          used += HuffmanCodebook.ESCAPED_CHAR_BITS;
+          if (used > bits.remaining()) break;
+          bits.skipBits(used - HuffmanCodebook.ESCAPED_CHAR_BITS);
+          return bits.readBits(HuffmanCodebook.ESCAPED_CHAR_BITS);
+        }
+        if (used > bits.remaining()) break;
+        bits.skipBits(used);
+        return c;
+      }
+      // Code continues in a secondary table.
+      if (width > bits.remaining()) break;
+      bits.skipBits(width);
+      entry = ~entry;
+      offset = entry >>> 6;
+      width = entry & 63;
+    }
+    bits.seek(mark);
+    return -1;
+  }
+
+  /**
+   * Decodes several streams in lockstep, one char from each in turn (see
+   * InterleavedEncoding). Streams are taken four at a time, each read a
+   * whole long at a time at its own bit position, so each char is a
+   * shift and a table probe and the four streams do not wait on each
+   * other.
+   *
+   * @param streams    packed bits of each stream, each followed by at
+   *                   least STREAM_PADDING bytes.
+   * @param bitLengths number of meaningful bits in each stream.
+   * @param out        decoded chars; stream s fills counts[s] chars
+   *                   starting at starts[s].
+   * @param starts     index in out of each stream's first char.
+   * @param counts     number of chars in each stream, never more than in
+   *                   the stream before.
+   * @throws IllegalStateException if a stream runs out partway through a
+   *         code, or has bits left over
+   */
+  void decodeInterleaved(byte[][] streams, long[] bitLengths, char[] out,
+                         int[] starts, int[] counts) {
+    int n = streams.length;
+    if (rootBits == 0 && n > 0 && counts[0] > 0) {
+      throw new IllegalStateException("Tree has no codes to decode.");
+    }
+    ByteBuffer[] in = new ByteBuffer[n];
+    for (int s = 0; s < n; s++) {
+      if (streams[s].length < (bitLengths[s] + 7) / 8 + STREAM_PADDING) {
+        throw new IllegalArgumentException("Stream " + s + " is not padded.");
+      }
+      in[s] = ByteBuffer.wrap(streams[s]);
+    }
+    long[] pos = new long[n];
+    int[] done = new int[n];
+
+    int shift = 64 - rootBits;
+    int s = 0;
+    for (; s + 4 <= n; s += 4) {
+      ByteBuffer b0 = in[s], b1 = in[s + 1], b2 = in[s + 2], b3 = in[s + 3];
+      long p0 = 0, p1 = 0, p2 = 0, p3 = 0;
+      int o0 = starts[s], o1 = starts[s + 1], o2 = starts[s + 2], o3 = starts[s + 3];
+      // The last of the four has the fewest chars.
+      int common = counts[s + 3];
+      for (int i = 0; i < common; i++) {
+        long w0 = b0.getLong((int) (p0 >>> 3)) << (p0 & 7);
+        long w1 = b1.getLong((int) (p1 >>> 3)) << (p1 & 7);
+        long w2 = b2.getLong((int) (p2 >>> 3)) << (p2 & 7);
+        long w3 = b3.getLong((int) (p3 >>> 3)) << (p3 & 7);
+        int e0 = table[(int) (w0 >>> shift)];
+        int e1 = table[(int) (w1 >>> shift)];
+        int e2 = table[(int) (w2 >>> shift)];
+        int e3 = table[(int) (w3 >>> shift)];
+        if (e0 < 0 || e0 >= ESCAPE_ENTRY) e0 = lookup(w0);
+        if (e1 < 0 || e1 >= ESCAPE_ENTRY) e1 = lookup(w1);
+        if (e2 < 0 || e2 >= ESCAPE_ENTRY) e2 = lookup(w2);
+        if (e3 < 0 || e3 >= ESCAPE_ENTRY) e3 = lookup(w3);
+        p0 += e0 & 63;
+        p1 += e1 & 63;
+        p2 += e2 & 63;
+        p3 += e3 & 63;
+        out[o0 + i] = (char) (e0 >>> 6);
+        out[o1 + i] = (char) (e1 >>> 6);
+        out[o2 + i] = (char) (e2 >>> 6);
+        out[o3 + i] = (char) (e3 >>> 6);
+        // Checked every time, so bad streams never read past the padding.
+        if (p0 > bitLengths[s] | p1 > bitLengths[s + 1]
+            | p2 > bitLengths[s + 2] | p3 > bitLengths[s + 3]) {
+          throw new IllegalStateException("Ran out of bits during decode.");
+        }
+      }
+      pos[s] = p0;
+      pos[s + 1] = p1;
+      pos[s + 2] = p2;
+      pos[s + 3] = p3;
+      for (int k = s; k < s + 4; k++) {
+        done[k] = common;
+      }
+    }
+
+    // Whatever the groups of four left over, one stream at a time.
+    for (s = 0; s < n; s++) {
+      ByteBuffer b = in[s];
+      long p = pos[s];
+      for (int i = done[s]; i < counts[s]; i++) {
+        long w = b.getLong((int) (p >>> 3)) << (p & 7);
+        int e = table[(int) (w >>> shift)];
+        if (e < 0 || e >= ESCAPE_ENTRY) e = lookup(w);
+        p += e & 63;
+        out[starts[s] + i] = (char) (e >>> 6);
+        if (p > bitLengths[s]) {
+          throw new IllegalStateException("Ran out of bits during decode.");
+        }
+      }
+      if (p < bitLengths[s]) {
+        throw new IllegalStateException("Stream has bits left over.");
+      }
+    }
+  }
+
+  /**
+   * Decodes the code at the top of a window of bits, through secondary
+   * tables and escape codes if need be.
+   *
+   * @param w window of bits, the code first; at least 32 bits.
+   * @return  a primary table entry for the code: decoded char << 6 |
+   *          bits used, including any escaped char.
+   */
+  private int lookup(long w) {
+    int used = 0;
+    int offset = 0;
+    int width = rootBits;
+    int entry;
+    while ((entry = table[offset + (int) (w >>> (64 - width))]) < 0) {
+      // Code continues in a secondary table.
+      w <<= width;
+      used += width;
+      entry = ~entry;
+      offset = entry >>> 6;
+      width = entry & 63;
+    }
+    int c = entry >>> 6;
+    used += entry & 63;
+    if (c == HuffmanCodebook.ESCAPE) {
+      // The char itself follows the escape code.
+      w <<= entry & 63;
+      c = (int) (w >>> (64 - HuffmanCodebook.ESCAPED_CHAR_BITS));
+      used += HuffmanCodebook.ESCAPED_CHAR_BITS;
+    }
+    return c << 6 | used;
+  }
+}
@@ -0,0 +1,201 @@
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Bounded cache of built trees, for pipelines that build a tree per
+ * document when many documents share much the same char frequencies.
+ *
+ * Trees are looked up by a fingerprint of the counted chars: each common
+ * char's share of the text, rounded to the nearest bit of code length
+ * (-log2 of its share). Texts with the same fingerprint would get about
+ * the same code lengths for their common chars, so they share one tree,
+ * at a small cost in encoded size. Rare chars are left out of the
+ * fingerprint, since their counts vary the most between texts, but a
+ * cached tree is only used if it has a code for every char counted.
+ *
+ * Only what encoding and decoding need is cached: a HuffmanCodec, with
+ * its codebook, decode tables and encode table, not the tree and its
+ * counts. Texts are counted sparsely (see CharCounts), so a lookup costs
+ * about the text's length plus its distinct chars, not the whole
+ * alphabet. The least recently used codec is dropped once the cache is
+ * full. Safe for use from any number of threads.
+ */
+class TreeCache {
+  /**
+   * Default number of codecs kept.
+   */
+  final static int DEFAULT_CAPACITY = 256;
+
+  /**
+   * Fingerprint levels per bit of code length.
+   */
+  private final static int STEPS_PER_BIT = 1;
+
+  /**
+   * Chars with codes longer than this many bits (a share of the text
+   * under 1/2^RARE_BITS) are left out of fingerprints.
+   */
+  private final static int RARE_BITS = 6;
+
+  /**
+   * Codecs by fingerprint, least recently used first.
+   */
+  private final Map<Fingerprint, HuffmanCodec> codecs;
+  /**
+   * Options every cached codec's tree is built with.
+   */
+  private final HuffmanConfig config;
+  private final AtomicLong hits = new AtomicLong();
+  private final AtomicLong misses = new AtomicLong();
+
+  /**
+   * Constructs an empty cache.
+   *
+   * @param capacity most codecs to keep, at least 1.
+   * @param config   options to build trees with.
+   */
+  TreeCache(final int capacity, HuffmanConfig config) {
+    if (capacity < 1) {
+      throw new IllegalArgumentException("Capacity must be positive: " + capacity);
+    }
+    this.config = config;
+    // Access order, so every get() moves a codec to the back.
+    codecs = new LinkedHashMap<Fingerprint, HuffmanCodec>(16, 0.75f, true) {
+      @Override
+      protected boolean removeEldestEntry(Map.Entry<Fingerprint, HuffmanCodec> eldest) {
+        return size() > capacity;
+      }
+    };
+  }
+
+  /**
+   * Returns a codec for a text, building it only if no text with the
+   * same fingerprint has been seen recently.
+   *
+   * @param text text to encode with the codec.
+   * @return     codec with codes for every char of text. On a hit, its
+   *             stats are those of the text it was built from.
+   * @throws IllegalArgumentException if a codec must be built, and text
+   *         has fewer than 2 distinct chars (and no gaps are filled in)
+   */
+  HuffmanCodec get(char[] text) {
+    return get(CharCounts.of(text));
+  }
+
+  /**
+   * Returns a codec for counted chars, building it only if no counts with
+   * the same fingerprint have been seen recently.
+   *
+   * @param counts chars to encode, and their frequencies.
+   * @return       codec with codes for every counted char.
+   * @throws IllegalArgumentException if a codec must be built, and there
+   *         are fewer than 2 distinct chars (and no gaps are filled in)
+   */
+  HuffmanCodec get(CharCounts counts) {
+    Fingerprint key = new Fingerprint(counts);
+    HuffmanCodec codec;
+    synchronized (codecs) {
+      codec = codecs.get(key);
+    }
+    if (codec != null && covers(codec, counts)) {
+      hits.incrementAndGet();
+      return codec;
+    }
+    misses.incrementAndGet();
+
+    // Built outside the lock, so other lookups are not held up. Two
+    //   threads missing on the same key at once both build; the second
+    //   codec replaces the first, and both are correct.
+    codec = HuffmanCodec.build(counts, config);
+    synchronized (codecs) {
+      codecs.put(key, codec);
+    }
+    return codec;
+  }
+
+  /**
+   * @param codec  a cached codec.
+   * @param counts counted chars.
+   * @return       true if codec has a code for every counted char.
+   */
+  private static boolean covers(HuffmanCodec codec, CharCounts counts) {
+    for (int c : counts.chars) {
+      if (!codec.canEncode((char) c)) return false;
+    }
+    return true;
+  }
+
+  /**
+   * @return number of lookups that found a cached codec
+   */
+  long hits() {
+    return hits.get();
+  }
+
+  /**
+   * @return number of lookups that had to build a codec
+   */
+  long misses() {
+    return misses.get();
+  }
+
+  /**
+   * @return number of codecs cached
+   */
+  int size() {
+    synchronized (codecs) {
+      return codecs.size();
+    }
+  }
+
+  /**
+   * Drops all cached codecs. Hit and miss counts are kept.
+   */
+  void clear() {
+    synchronized (codecs) {
+      codecs.clear();
+    }
+  }
+
+  /**
+   * Quantized counts: each common char, with its share of the text as a
+   * code length in steps of 1/STEPS_PER_BIT bits.
+   */
+  private static final class Fingerprint {
+    /**
+     * char << 16 | level, for each common char in order.
+     */
+    private final int[] entries;
+    private final int hash;
+
+    /**
+     * @param counts counted chars, in increasing order.
+     */
+    Fingerprint(CharCounts counts) {
+      // At most 2^RARE_BITS chars can each have a share of 1/2^RARE_BITS
+      //   or more.
+      int[] common = new int[Math.min(counts.size(), 1 << RARE_BITS)];
+      int n = 0;
+      for (int i = 0; i < counts.size(); i++) {
+        if (counts.counts[i] << RARE_BITS < counts.total) continue;
+        double bits = Math.log((double) counts.total / counts.counts[i]) / Math.log(2);
+        common[n++] = counts.chars[i] << 16 | (int) Math.round(bits * STEPS_PER_BIT);
+      }
+      entries = Arrays.copyOf(common, n);
+      hash = Arrays.hashCode(entries);
+    }
+
+    @Override
+    public boolean equals(Object other) {
+      return other instanceof Fingerprint
+          && Arrays.equals(entries, ((Fingerprint) other).entries);
+    }
+
+    @Override
+    public int hashCode() {
+      return hash;
+    }
+  }
+}
@@ -0,0 +1,96 @@
+import jdk.incubator.vector.IntVector;
+import jdk.incubator.vector.ShortVector;
+import jdk.incubator.vector.VectorOperators;
+import jdk.incubator.vector.VectorShape;
+import jdk.incubator.vector.VectorSpecies;
+
+/**
+ * HuffmanKernels with the Vector API, for CPUs with vectors of 256 bits
+ * (AVX2) or more (AVX-512). Gives exactly the same counts as the plain
+ * loop, which it falls back on for anything it cannot do a vector at a
+ * time.
+ *
+ * Java 17 or later, with --add-modules jdk.incubator.vector; loaded by
+ * HuffmanKernels when available.
+ */
+class VectorHuffmanKernels extends HuffmanKernels {
+  /**
+   * Ints as wide as this CPU's vectors, one lane per char counted, and
+   * chars with as many lanes.
+   */
+  private final static VectorSpecies<Integer> INDEXES = IntVector.SPECIES_PREFERRED;
+  private final static VectorSpecies<Short> CHARS =
+      VectorSpecies.of(short.class, VectorShape.forBitSize(INDEXES.length() * Short.SIZE));
+
+  /**
+   * Texts shorter than this are counted by the plain loop: clearing and
+   * summing the per-lane tables would cost more than it saves.
+   */
+  private final static int MIN_VECTOR_COUNT = 4096;
+
+  /**
+   * Chars a histogram table covers. Only chars below this are counted a
+   * vector at a time.
+   */
+  private final static int TABLE_CHARS = 256;
+
+  /**
+   * @throws UnsupportedOperationException if vectors are narrower than
+   *         256 bits, where the plain loop is faster
+   */
+  VectorHuffmanKernels() {
+    if (INDEXES.vectorBitSize() < 256) {
+      throw new UnsupportedOperationException("Vectors of "
+          + INDEXES.vectorBitSize() + " bits are too narrow.");
+    }
+  }
+
+  /**
+   * Counts chars into one small table per lane, so no two lanes of a
+   * vector ever add to the same count: a gather, an add and a scatter
+   * with no conflicts, however often a char repeats. This also avoids
+   * the stall of the plain loop, where each count must be stored before
+   * the next add to it can load it. Vectors holding a char past
+   * TABLE_CHARS are counted by the plain loop, and the rest of the text
+   * too if that happens often.
+   */
+  @Override
+  void countChars(char[] chars, int off, int len, long[] counts) {
+    if (len < MIN_VECTOR_COUNT) {
+      super.countChars(chars, off, len, counts);
+      return;
+    }
+    int lanes = INDEXES.length();
+    int[] tables = new int[lanes * TABLE_CHARS];
+    int[] index = new int[lanes];
+    IntVector tableStarts = IntVector.zero(INDEXES).addIndex(TABLE_CHARS);
+    int i = off;
+    int end = off + len;
+    int vectorEnd = end - len % lanes;
+    int vectors = 0;
+    int misses = 0;
+    while (i < vectorEnd) {
+      ShortVector v = ShortVector.fromCharArray(CHARS, chars, i);
+      vectors++;
+      if (v.compare(VectorOperators.UNSIGNED_GE, (short) TABLE_CHARS).anyTrue()) {
+        for (int stop = i + lanes; i < stop; i++) {
+          counts[chars[i]]++;
+        }
+        // Mostly wide chars: the plain loop is faster.
+        if (++misses * 4 > vectors && vectors >= 64) break;
+        continue;
+      }
+      ((IntVector) v.convertShape(VectorOperators.S2I, INDEXES, 0))
+          .add(tableStarts).intoArray(index, 0);
+      IntVector.fromArray(INDEXES, tables, 0, index, 0).add(1)
+          .intoArray(tables, 0, index, 0);
+      i += lanes;
+    }
+    super.countChars(chars, i, end - i, counts);
+    for (int lane = 0; lane < lanes; lane++) {
+      for (int c = 0; c < TABLE_CHARS; c++) {
+        counts[c] += tables[lane * TABLE_CHARS + c];
+      }
+    }
+  }
+}